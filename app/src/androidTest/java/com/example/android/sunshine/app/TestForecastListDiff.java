@@ -0,0 +1,122 @@
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks that the updates of a diff turn the old forecast list into the new one, and that
+    only the rows that show something different are bound again.
+ */
+public class TestForecastListDiff extends AndroidTestCase {
+
+    private static final long DAY = 86400000L;
+    private static final long TODAY = 1419033600000L;
+
+    public void testOneChangedDayRebindsOneRow() {
+        ForecastList oldList = createList(TODAY, 0, 14, -1);
+        ForecastList newList = createList(TODAY, 0, 14, 5);
+
+        ForecastListDiff diff = ForecastListDiff.compute(oldList, newList);
+        assertEquals(1, diff.size());
+        assertEquals(ForecastListDiff.CHANGE, diff.getType(0));
+        assertEquals(5, diff.getPosition(0));
+        assertEquals(1, diff.getCount(0));
+        checkDiff(oldList, newList, diff);
+    }
+
+    public void testSameListHasNoUpdates() {
+        ForecastList list = createList(TODAY, 0, 14, -1);
+        assertEquals(0, ForecastListDiff.compute(list, createList(TODAY, 0, 14, -1)).size());
+    }
+
+    // The first day goes, a new one comes at the end and the new first row takes today's layout
+    public void testNextDay() {
+        ForecastList oldList = createList(TODAY, 0, 14, -1);
+        ForecastList newList = createList(TODAY, 1, 15, -1);
+
+        ForecastListDiff diff = ForecastListDiff.compute(oldList, newList);
+        checkDiff(oldList, newList, diff);
+        assertEquals(3, diff.size());
+    }
+
+    // "Today" and "tomorrow" are different days once the day has changed
+    public void testDayChangeRebindsEveryRow() {
+        ForecastList oldList = createList(TODAY, 0, 14, -1);
+        ForecastList newList = createList(TODAY + DAY, 0, 14, -1);
+
+        ForecastListDiff diff = ForecastListDiff.compute(oldList, newList);
+        assertEquals(1, diff.size());
+        assertEquals(ForecastListDiff.CHANGE, diff.getType(0));
+        assertEquals(14, diff.getCount(0));
+    }
+
+    public void testGapsAndOverlaps() {
+        ForecastList oldList = createList(TODAY, 0, 6, 2);
+        ForecastList newList = createList(TODAY, 3, 10, 4);
+        checkDiff(oldList, newList, ForecastListDiff.compute(oldList, newList));
+        checkDiff(newList, oldList, ForecastListDiff.compute(newList, oldList));
+        checkDiff(oldList, createList(TODAY, 8, 12, -1),
+                ForecastListDiff.compute(oldList, createList(TODAY, 8, 12, -1)));
+    }
+
+    // Applies the updates to the old dates the way RecyclerView does and checks that every row
+    // ends up with the new day, and that a row is rebound wherever it shows something else
+    private static void checkDiff(ForecastList oldList, ForecastList newList,
+                                  ForecastListDiff diff) {
+        List<Long> dates = new ArrayList<>();
+        List<Boolean> bound = new ArrayList<>();
+        List<Integer> oldPositions = new ArrayList<>();
+        for (int i = 0; i < oldList.size(); i++) {
+            dates.add(oldList.getDate(i));
+            bound.add(false);
+            oldPositions.add(i);
+        }
+        for (int i = 0; i < diff.size(); i++) {
+            int position = diff.getPosition(i);
+            for (int j = 0; j < diff.getCount(i); j++) {
+                switch (diff.getType(i)) {
+                    case ForecastListDiff.INSERT:
+                        dates.add(position + j, null);
+                        bound.add(position + j, true);
+                        oldPositions.add(position + j, -1);
+                        break;
+                    case ForecastListDiff.REMOVE:
+                        dates.remove(position);
+                        bound.remove(position);
+                        oldPositions.remove(position);
+                        break;
+                    default:
+                        bound.set(position + j, true);
+                }
+            }
+        }
+
+        assertEquals(newList.size(), dates.size());
+        for (int i = 0; i < newList.size(); i++) {
+            if (!bound.get(i)) {
+                assertEquals("Error: row " + i + " kept the wrong day",
+                        newList.getDate(i), (long) dates.get(i));
+                assertTrue("Error: row " + i + " wasn't bound again",
+                        oldList.sameContents(oldPositions.get(i), newList, i));
+                assertTrue("Error: the first row kept the layout of another day",
+                        i != 0 || oldPositions.get(i) == 0);
+            }
+        }
+    }
+
+    // The days from first to last, with a different high on the changed day
+    private static ForecastList createList(long today, int first, int last, int changedDay) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "date", "short_desc", "max",
+                "min", "location_setting", "weather_id", "coord_lat", "coord_long"});
+        for (int day = first; day < last; day++) {
+            cursor.addRow(new Object[]{day, TODAY + day * DAY, "Clear",
+                    day == changedDay ? 30.0 : 20.0 + day, 10.0, "99705", 800, 64.7, -147.3});
+        }
+        ForecastList list = ForecastList.fromCursor(cursor, today);
+        cursor.close();
+        return list;
+    }
+}
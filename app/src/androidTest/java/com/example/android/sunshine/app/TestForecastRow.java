@@ -0,0 +1,98 @@
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.database.MatrixCursor;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+/*
+    Checks that the formatted rows of the forecast list show what Utility formats for each day,
+    and that formatting the same days again doesn't bind any row again unless a setting changed.
+ */
+public class TestForecastRow extends AndroidTestCase {
+
+    private static final long DAY = 86400000L;
+
+    private long mToday;
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mToday = System.currentTimeMillis();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnits = prefs.getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric));
+        setUnits(mContext.getString(R.string.pref_units_metric));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setUnits(mUnits);
+        super.tearDown();
+    }
+
+    public void testRowsMatchUtility() {
+        ForecastList list = createList().format(mContext, true);
+        boolean localGraphics = Utility.usingLocalGraphics(mContext);
+        for (int i = 0; i < list.size(); i++) {
+            ForecastRow row = list.getRow(i);
+            assertEquals(list.getDate(i), row.date);
+            assertEquals(Utility.getFriendlyDayString(mContext, list.getDate(i), i == 0),
+                    row.dateText);
+            assertEquals(Utility.getStringForWeatherCondition(mContext, list.getWeatherId(i)),
+                    row.description);
+            assertEquals(Utility.formatTemperature(mContext, list.getHigh(i)), row.highText);
+            assertEquals(Utility.formatTemperature(mContext, list.getLow(i)), row.lowText);
+            assertEquals(i == 0
+                    ? Utility.getArtResourceForWeatherCondition(list.getWeatherId(i))
+                    : Utility.getIconResourceForWeatherCondition(list.getWeatherId(i)),
+                    row.imageResource);
+            if (localGraphics) {
+                assertNull("Error: art url with the local art pack", row.artUrl);
+            }
+        }
+    }
+
+    public void testFormattingAgainHasNoUpdates() {
+        ForecastList days = createList();
+        ForecastList first = days.format(mContext, true);
+        ForecastList second = days.format(mContext, true);
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.getRow(i), second.getRow(i));
+        }
+        assertEquals(0, ForecastListDiff.compute(first, second).size());
+    }
+
+    public void testUnitsChangeRebindsEveryRow() {
+        ForecastList days = createList();
+        ForecastList metric = days.format(mContext, true);
+        setUnits(mContext.getString(R.string.pref_units_imperial));
+        ForecastList imperial = days.format(mContext, true);
+
+        ForecastListDiff diff = ForecastListDiff.compute(metric, imperial);
+        assertEquals(1, diff.size());
+        assertEquals(ForecastListDiff.CHANGE, diff.getType(0));
+        assertEquals(0, diff.getPosition(0));
+        assertEquals(days.size(), diff.getCount(0));
+    }
+
+    private void setUnits(String units) {
+        SettingsSnapshot.commit(PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key), units));
+    }
+
+    // Two weeks from today, every day with another condition and temperature
+    private ForecastList createList() {
+        int[] weatherIds = {200, 300, 500, 511, 520, 600, 701, 761, 781, 800, 801, 802, 803, 804};
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "date", "short_desc", "max",
+                "min", "location_setting", "weather_id", "coord_lat", "coord_long"});
+        for (int day = 0; day < weatherIds.length; day++) {
+            cursor.addRow(new Object[]{day, mToday + day * DAY, "Clear", 20.0 + day,
+                    10.0 - day, "99705", weatherIds[day], 64.7, -147.3});
+        }
+        ForecastList list = ForecastList.fromCursor(cursor);
+        cursor.close();
+        return list;
+    }
+}
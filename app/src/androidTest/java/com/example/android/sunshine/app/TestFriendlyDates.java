@@ -0,0 +1,90 @@
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.AllocationBenchmark;
+
+import java.util.Calendar;
+
+/*
+    Checks that the friendly dates read from the labels of the coming two weeks are the ones
+    Utility formatted before, for the days around them too, and compares how many objects either
+    way allocates for the days the forecast list shows.
+ */
+public class TestFriendlyDates extends AndroidTestCase {
+
+    private static final int FIRST_DAY = -10;
+    private static final int LAST_DAY = 30;
+    private static final int ROUNDS = 20;
+
+    public void testLabelsMatchFormatting() {
+        // The second pass reads the labels made by the first
+        for (int pass = 0; pass < 2; pass++) {
+            for (int day = FIRST_DAY; day <= LAST_DAY; day++) {
+                long date = getNoon(day);
+                assertEquals("Error: friendly day " + day,
+                        Utility.computeFriendlyDayString(mContext, date, false),
+                        Utility.getFriendlyDayString(mContext, date, false));
+                assertEquals("Error: long friendly day " + day,
+                        Utility.computeFriendlyDayString(mContext, date, true),
+                        Utility.getFriendlyDayString(mContext, date, true));
+                assertEquals("Error: full friendly day " + day,
+                        Utility.computeFullFriendlyDayString(mContext, date),
+                        Utility.getFullFriendlyDayString(mContext, date));
+                assertEquals("Error: name of day " + day,
+                        Utility.computeDayName(mContext, date),
+                        Utility.getDayName(mContext, date));
+                assertEquals("Error: month and day of day " + day,
+                        Utility.computeFormattedMonthDay(mContext, date),
+                        Utility.getFormattedMonthDay(mContext, date));
+                assertEquals("Error: date of day " + day,
+                        Utility.computeFormatDate(date), Utility.formatDate(date));
+            }
+        }
+    }
+
+    public void testLabelsSharedWithinTheDay() {
+        long date = getNoon(3);
+        assertSame("Error: label formatted again",
+                Utility.getFriendlyDayString(mContext, date, false),
+                Utility.getFriendlyDayString(mContext, date, false));
+    }
+
+    public void testAllocations() {
+        final long[] dates = new long[FriendlyDates.HORIZON_DAYS];
+        for (int day = 0; day < dates.length; day++) {
+            dates[day] = getNoon(day);
+        }
+        // Make the labels before counting
+        Utility.getFriendlyDayString(mContext, dates[0], true);
+
+        AllocationBenchmark.assertAllocatesLess("Friendly days of two weeks", ROUNDS,
+                new AllocationBenchmark.Task("formatting") {
+                    @Override
+                    protected void run() {
+                        for (int day = 0; day < dates.length; day++) {
+                            Utility.computeFriendlyDayString(mContext, dates[day], day == 0);
+                        }
+                    }
+                },
+                new AllocationBenchmark.Task("labels") {
+                    @Override
+                    protected void run() {
+                        for (int day = 0; day < dates.length; day++) {
+                            Utility.getFriendlyDayString(mContext, dates[day], day == 0);
+                        }
+                    }
+                });
+    }
+
+    // Noon of the day, counted from today
+    private static long getNoon(int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 12);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, day);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+
+/*
+    Checks that the saved locations come after the preferred one, most recent first, and that
+    they can be forgotten one at a time or all at once.
+ */
+public class TestSavedLocations extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mSaved;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mSaved = mPrefs.getString(mContext.getString(R.string.pref_saved_locations_key), null);
+        Utility.clearSavedLocations(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mContext.getString(R.string.pref_saved_locations_key), mSaved)
+                .commit();
+        super.tearDown();
+    }
+
+    public void testAddRemoveAndClear() {
+        String preferred = Utility.getPreferredLocation(mContext);
+        assertEquals(Arrays.asList(preferred), Utility.getSavedLocations(mContext));
+
+        Utility.addSavedLocation(mContext, "Paris");
+        Utility.addSavedLocation(mContext, "Oslo");
+        Utility.addSavedLocation(mContext, "Paris");
+        assertEquals(Arrays.asList(preferred, "Paris", "Oslo"),
+                Utility.getSavedLocations(mContext));
+
+        Utility.removeSavedLocation(mContext, "Paris");
+        assertEquals(Arrays.asList(preferred, "Oslo"), Utility.getSavedLocations(mContext));
+
+        Utility.clearSavedLocations(mContext);
+        assertEquals(Arrays.asList(preferred), Utility.getSavedLocations(mContext));
+    }
+}
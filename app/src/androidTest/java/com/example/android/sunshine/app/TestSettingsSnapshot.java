@@ -0,0 +1,106 @@
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that the settings snapshot is read once and shared until a preference changes, and
+    that the helpers in Utility and the listeners registered through it read what was just
+    written.
+ */
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnits = mPrefs.getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SettingsSnapshot.commit(
+                mPrefs.edit().putString(mContext.getString(R.string.pref_units_key), mUnits));
+        Utility.resetLocationStatus(mContext);
+        super.tearDown();
+    }
+
+    public void testSnapshotSharedUntilChange() {
+        final SettingsSnapshot first = SettingsSnapshot.get(mContext);
+        assertSame("Error: settings read again without a change",
+                first, SettingsSnapshot.get(mContext));
+        assertEquals(mPrefs.getString(mContext.getString(R.string.pref_location_key),
+                mContext.getString(R.string.pref_location_default)), first.locationSetting);
+
+        final boolean metric = first.metric;
+        mPrefs.edit().putString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(metric
+                        ? R.string.pref_units_imperial : R.string.pref_units_metric))
+                .commit();
+        // The listener is called on the main thread
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return SettingsSnapshot.get(mContext).metric != metric;
+            }
+        }.run();
+        assertEquals(!metric, Utility.isMetric(mContext));
+    }
+
+    public void testLocationStatusReadAfterReset() {
+        SettingsSnapshot.commit(mPrefs.edit().putInt(
+                mContext.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_OK));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+
+        Utility.resetLocationStatus(mContext);
+        assertEquals("Error: location status from before the reset",
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN, Utility.getLocationStatus(mContext));
+    }
+
+    public void testListenerReadsChangedSettings() {
+        final boolean metric = SettingsSnapshot.get(mContext).metric;
+        final boolean[] readMetric = new boolean[1];
+        final boolean[] called = new boolean[1];
+        SharedPreferences.OnSharedPreferenceChangeListener listener =
+                new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                        synchronized (called) {
+                            readMetric[0] = Utility.isMetric(mContext);
+                            called[0] = true;
+                        }
+                    }
+                };
+        SettingsSnapshot.registerListener(mContext, listener);
+        try {
+            // Written around the snapshot, like the settings screen does
+            mPrefs.edit().putString(mContext.getString(R.string.pref_units_key),
+                    mContext.getString(metric
+                            ? R.string.pref_units_imperial : R.string.pref_units_metric))
+                    .commit();
+            new PollingCheck() {
+                @Override
+                protected boolean check() {
+                    synchronized (called) {
+                        return called[0];
+                    }
+                }
+            }.run();
+        } finally {
+            SettingsSnapshot.unregisterListener(listener);
+        }
+        synchronized (called) {
+            assertEquals("Error: listener read the settings from before the change",
+                    !metric, readMetric[0]);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Checks that the condition table answers exactly what the if/else chains in Utility do for
+    every condition id, before and after an art pack change, and compares how long either takes.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    // Below, in and above the table, 9xx included
+    private static final int FIRST_CHECKED_ID = -1;
+    private static final int LAST_CHECKED_ID = 1000;
+    private static final int TIMING_ROUNDS = 20;
+
+    private String mArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mArtPack = PreferenceManager.getDefaultSharedPreferences(mContext).getString(
+                mContext.getString(R.string.pref_art_pack_key),
+                mContext.getString(R.string.pref_art_pack_sunshine));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setArtPack(mArtPack);
+        super.tearDown();
+    }
+
+    public void testTableMatchesChains() {
+        // The second pass reads the strings kept by the first
+        checkEveryCondition();
+        checkEveryCondition();
+    }
+
+    public void testArtPackChangeDropsArtUrls() {
+        setArtPack(mContext.getString(R.string.pref_art_pack_sunshine));
+        String sunshineUrl = Utility.getArtUrlForWeatherCondition(mContext, 800);
+
+        setArtPack(mContext.getString(R.string.pref_art_pack_cute_dogs));
+        assertFalse("Error: art url of the old art pack",
+                sunshineUrl.equals(Utility.getArtUrlForWeatherCondition(mContext, 800)));
+        checkEveryCondition();
+    }
+
+    public void testTiming() {
+        long chainNanos = 0;
+        long tableNanos = 0;
+        int found = 0;
+        for (int round = 0; round < TIMING_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int id = WeatherConditions.FIRST_ID; id <= WeatherConditions.LAST_ID; id++) {
+                found += Utility.computeIconResourceForWeatherCondition(id);
+                found += Utility.computeArtResourceForWeatherCondition(id);
+                found += Utility.computeStringForWeatherCondition(mContext, id).length();
+                String artUrl = Utility.computeArtUrlForWeatherCondition(mContext, id);
+                found += artUrl == null ? 0 : artUrl.length();
+            }
+            long chains = System.nanoTime();
+            for (int id = WeatherConditions.FIRST_ID; id <= WeatherConditions.LAST_ID; id++) {
+                found -= Utility.getIconResourceForWeatherCondition(id);
+                found -= Utility.getArtResourceForWeatherCondition(id);
+                found -= Utility.getStringForWeatherCondition(mContext, id).length();
+                String artUrl = Utility.getArtUrlForWeatherCondition(mContext, id);
+                found -= artUrl == null ? 0 : artUrl.length();
+            }
+            tableNanos += System.nanoTime() - chains;
+            chainNanos += chains - start;
+        }
+        assertEquals(0, found);
+        int conditions = WeatherConditions.LAST_ID - WeatherConditions.FIRST_ID + 1;
+        Log.i(LOG_TAG, "Looking up " + conditions + " conditions: chains "
+                + chainNanos / TIMING_ROUNDS / 1000 + "us, table "
+                + tableNanos / TIMING_ROUNDS / 1000 + "us");
+    }
+
+    private void checkEveryCondition() {
+        for (int id = FIRST_CHECKED_ID; id <= LAST_CHECKED_ID; id++) {
+            assertEquals("Error: icon of condition " + id,
+                    Utility.computeIconResourceForWeatherCondition(id),
+                    Utility.getIconResourceForWeatherCondition(id));
+            assertEquals("Error: art of condition " + id,
+                    Utility.computeArtResourceForWeatherCondition(id),
+                    Utility.getArtResourceForWeatherCondition(id));
+            assertEquals("Error: string of condition " + id,
+                    Utility.computeStringForWeatherCondition(mContext, id),
+                    Utility.getStringForWeatherCondition(mContext, id));
+            assertEquals("Error: art url of condition " + id,
+                    Utility.computeArtUrlForWeatherCondition(mContext, id),
+                    Utility.getArtUrlForWeatherCondition(mContext, id));
+        }
+    }
+
+    private void setArtPack(String artPack) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        SettingsSnapshot.commit(
+                prefs.edit().putString(mContext.getString(R.string.pref_art_pack_key), artPack));
+    }
+}
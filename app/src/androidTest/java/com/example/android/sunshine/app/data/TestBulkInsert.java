@@ -0,0 +1,175 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.AllocationBenchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Compares the compiled statement bulk insert with the ContentValues one, both for the rows
+    they leave behind and for what they cost on a multi-location batch: the compiled one must
+    allocate less, how long either takes is logged.
+ */
+public class TestBulkInsert extends AndroidTestCase {
+
+    private static final int LOCATIONS = 20;
+    private static final int DAYS = 14;
+    private static final int TIMING_ROUNDS = 5;
+
+    private SQLiteDatabase mDb;
+    private long[] mLocationIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+
+        mLocationIds = new long[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            ContentValues location = TestUtilities.createNorthPoleLocationValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, TestUtilities.TEST_LOCATION + i);
+            mLocationIds[i] = mDb.insert(LocationEntry.TABLE_NAME, null, location);
+            assertTrue(mLocationIds[i] != -1);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testCompiledMatchesContentValues() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        // Fresh rows first, then the same days again with new values to go through the updates
+        for (double offset : new double[]{0, 1.5}) {
+            mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+            upsert(createRows(0), false);
+            upsert(createRows(offset), false);
+            List<ContentValues> expected = readRows();
+
+            mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+            upsert(createRows(0), true);
+            upsert(createRows(offset), true);
+            List<ContentValues> actual = readRows();
+
+            assertEquals(LOCATIONS * DAYS, expected.size());
+            assertEquals("Error: compiled bulk insert left different rows", expected, actual);
+        }
+    }
+
+    // Rows the compiled statements can't take go through the ContentValues path, and fail the
+    // same way there
+    public void testIncompleteRowsFallBack() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        ContentValues[] rows = createRows(0);
+        rows[3].remove(WeatherEntry.COLUMN_DEGREES);
+        rows[5].putNull(WeatherEntry.COLUMN_DEGREES);
+        assertEquals(LOCATIONS * DAYS - 2, upsert(rows, false));
+        List<ContentValues> expected = readRows();
+
+        mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+        rows = createRows(0);
+        rows[3].remove(WeatherEntry.COLUMN_DEGREES);
+        rows[5].putNull(WeatherEntry.COLUMN_DEGREES);
+        assertEquals(LOCATIONS * DAYS - 2, upsert(rows, true));
+
+        assertEquals(expected, readRows());
+    }
+
+    // The compiled statements are made once for the batch, the ContentValues path makes the SQL
+    // and a statement for every row
+    public void testAllocations() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        AllocationBenchmark.assertAllocatesLess("Bulk insert of " + LOCATIONS * DAYS + " rows",
+                TIMING_ROUNDS, new UpsertTask("ContentValues", false),
+                new UpsertTask("compiled", true));
+    }
+
+    private class UpsertTask extends AllocationBenchmark.Task {
+        private final boolean mCompiled;
+        private ContentValues[] mRows;
+
+        UpsertTask(String name, boolean compiled) {
+            super(name);
+            mCompiled = compiled;
+        }
+
+        @Override
+        protected void prepare(int round) {
+            mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+            mRows = createRows(round);
+        }
+
+        @Override
+        protected void run() {
+            assertEquals(LOCATIONS * DAYS, upsert(mRows, mCompiled));
+        }
+    }
+
+    private int upsert(ContentValues[] rows, boolean compiled) {
+        mDb.beginTransaction();
+        try {
+            int count = compiled
+                    ? WeatherProvider.upsertWeatherCompiled(mDb, rows)
+                    : WeatherProvider.upsertWeather(mDb, rows);
+            mDb.setTransactionSuccessful();
+            return count;
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    private ContentValues[] createRows(double offset) {
+        ContentValues[] rows = new ContentValues[LOCATIONS * DAYS];
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        for (int location = 0; location < LOCATIONS; location++) {
+            for (int day = 0; day < DAYS; day++) {
+                ContentValues row = new ContentValues();
+                row.put(WeatherEntry.COLUMN_LOC_KEY, mLocationIds[location]);
+                row.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + day * millisecondsInADay);
+                row.put(WeatherEntry.COLUMN_DEGREES, 1.1 + offset);
+                row.put(WeatherEntry.COLUMN_HUMIDITY, 1.2 + day);
+                row.put(WeatherEntry.COLUMN_PRESSURE, 1.3 + location);
+                row.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day + offset);
+                row.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - day);
+                row.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+                row.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5 + 0.2 * day);
+                row.put(WeatherEntry.COLUMN_WEATHER_ID, 321 + (int) offset);
+                rows[location * DAYS + day] = row;
+            }
+        }
+        return rows;
+    }
+
+    private List<ContentValues> readRows() {
+        Cursor cursor = mDb.query(WeatherEntry.TABLE_NAME, null, null, null, null, null,
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE);
+        List<ContentValues> rows = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            ContentValues row = new ContentValues();
+            DatabaseUtils.cursorRowToContentValues(cursor, row);
+            // Row ids depend on the order of earlier inserts, not on the values
+            row.remove(WeatherEntry._ID);
+            rows.add(row);
+        }
+        cursor.close();
+        return rows;
+    }
+}
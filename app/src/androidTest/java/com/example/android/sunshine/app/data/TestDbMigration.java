@@ -0,0 +1,238 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+    Builds databases the way older versions of the app left them and checks that opening them
+    migrates the schema to the one a fresh install gets, without losing the stored rows.  The
+    steps that change more than they add are also checked on their own, from the schema the
+    version before them shipped with.
+ */
+public class TestDbMigration extends AndroidTestCase {
+
+    // The schema of version 2, the oldest one we migrate from.  Never change these, they are
+    // what's on the devices.
+    private static final String V2_CREATE_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL  );";
+    private static final String V2_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+    // Added by version 3, replaced by the list index of version 4
+    private static final String V3_CREATE_LOCATION_DATE_INDEX =
+            "CREATE INDEX weather_location_date ON weather (location_id, date)";
+    private static final String V4_CREATE_LIST_INDEX = "CREATE INDEX weather_location_date_list" +
+            " ON weather (location_id, date, weather_id, max, min, short_desc)";
+    private static final String V5_CREATE_HOURLY_TABLE = "CREATE TABLE hourly (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_id INTEGER NOT NULL, " +
+            "hour INTEGER NOT NULL, " +
+            "weather_id INTEGER NOT NULL, " +
+            "temp INTEGER NOT NULL, " +
+            "humidity INTEGER NOT NULL, " +
+            "pressure INTEGER NOT NULL, " +
+            "wind INTEGER NOT NULL, " +
+            "degrees INTEGER NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (location_id, hour) ON CONFLICT REPLACE);";
+    private static final String V6_CREATE_HISTORY_TABLE = "CREATE TABLE history (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "weather_id INTEGER NOT NULL, " +
+            "min INTEGER NOT NULL, " +
+            "max INTEGER NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (location_id, date) ON CONFLICT REPLACE);";
+    private static final String V6_CREATE_ARCHIVE_TABLE = "CREATE TABLE archive (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_id INTEGER NOT NULL, " +
+            "period INTEGER NOT NULL, " +
+            "period_start INTEGER NOT NULL, " +
+            "min INTEGER NOT NULL, " +
+            "max INTEGER NOT NULL, " +
+            "mean INTEGER NOT NULL, " +
+            "weather_id INTEGER NOT NULL, " +
+            "day_count INTEGER NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (location_id, period, period_start) ON CONFLICT REPLACE);";
+
+    private static final long DAY = 86400000L;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void testMigrationKeepsRows() {
+        SQLiteDatabase db = createDatabase(WeatherDbHelper.OLDEST_MIGRATABLE_VERSION);
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null, locationValues);
+        assertTrue(locationRowId != -1);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+        db.close();
+
+        db = new WeatherDbHelper(mContext).getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, null, null, null, null, null, null);
+        TestUtilities.validateCursor("Error: location lost in the migration", cursor, locationValues);
+        cursor = db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+        TestUtilities.validateCursor("Error: weather lost in the migration", cursor, weatherValues);
+        db.close();
+    }
+
+    public void testMigratedSchemaMatchesFreshSchema() {
+        createDatabase(WeatherDbHelper.OLDEST_MIGRATABLE_VERSION).close();
+        checkMigratedSchemaMatchesFreshSchema();
+    }
+
+    // Opens the database that is there, which migrates it to the latest version
+    private void checkMigratedSchemaMatchesFreshSchema() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        Set<String> migrated = readSchema(db);
+        db.close();
+
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        db = new WeatherDbHelper(mContext).getWritableDatabase();
+        Set<String> fresh = readSchema(db);
+        db.close();
+
+        assertEquals("Error: migrated database differs from a new one", fresh, migrated);
+    }
+
+    // A version 3 database has the index of the 2 -> 3 step as it shipped, which 3 -> 4 replaces
+    public void testStepFromVersion3() {
+        SQLiteDatabase db = createDatabase(3);
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+        assertTrue(readSchema(db).contains("index weather_location_date on weather"));
+
+        WeatherDbHelper.migrate(db, 3, 4);
+        Set<String> schema = readSchema(db);
+        assertFalse("Error: the index of version 3 was kept",
+                schema.contains("index weather_location_date on weather"));
+        assertTrue("Error: no list index after 3 -> 4",
+                schema.contains("index weather_location_date_list on weather"));
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+        TestUtilities.validateCursor("Error: weather lost in 3 -> 4", cursor, weatherValues);
+        db.setVersion(4);
+        db.close();
+
+        checkMigratedSchemaMatchesFreshSchema();
+    }
+
+    // 6 -> 7 moves the days into slots; of two stored days that share one the newer stays
+    public void testStepFromVersion6KeepsNewerDayOfSlot() {
+        SQLiteDatabase db = createDatabase(6);
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        long[] dates = {
+                TestUtilities.TEST_DATE + WeatherEntry.SLOT_COUNT * DAY,
+                TestUtilities.TEST_DATE,
+                TestUtilities.TEST_DATE + DAY};
+        for (long date : dates) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, date);
+            assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+        }
+
+        WeatherDbHelper.migrate(db, 6, 7);
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_SLOT},
+                null, null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: two days share a slot after 6 -> 7", 2, cursor.getCount());
+        for (long date : new long[]{dates[2], dates[0]}) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(date, cursor.getLong(0));
+            assertEquals(WeatherEntry.getSlot(date), cursor.getInt(1));
+        }
+        cursor.close();
+        Set<String> schema = readSchema(db);
+        assertFalse("Error: the table of version 6 was kept",
+                schema.contains("table weather_v6 on weather_v6"));
+        assertTrue("Error: no list index after 6 -> 7",
+                schema.contains("index weather_location_date_list on weather"));
+        db.setVersion(7);
+        db.close();
+
+        checkMigratedSchemaMatchesFreshSchema();
+    }
+
+    // Versions we have no migration from are only a cache, they start over
+    public void testUnknownVersionStartsOver() {
+        SQLiteDatabase db = createDatabase(WeatherDbHelper.OLDEST_MIGRATABLE_VERSION - 1);
+        assertTrue(db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues()) != -1);
+        db.close();
+
+        db = new WeatherDbHelper(mContext).getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME));
+        db.close();
+    }
+
+    // The schema a version up to 6 shipped with, versions before 2 get the one of version 2
+    private SQLiteDatabase createDatabase(int version) {
+        assertTrue(version <= 6);
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+        db.execSQL(V2_CREATE_LOCATION_TABLE);
+        db.execSQL(V2_CREATE_WEATHER_TABLE);
+        if (version == 3) {
+            db.execSQL(V3_CREATE_LOCATION_DATE_INDEX);
+        }
+        if (version >= 4) {
+            db.execSQL(V4_CREATE_LIST_INDEX);
+        }
+        if (version >= 5) {
+            db.execSQL(V5_CREATE_HOURLY_TABLE);
+        }
+        if (version >= 6) {
+            db.execSQL(V6_CREATE_HISTORY_TABLE);
+            db.execSQL(V6_CREATE_ARCHIVE_TABLE);
+        }
+        db.setVersion(version);
+        return db;
+    }
+
+    private static Set<String> readSchema(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT type, name, tbl_name FROM sqlite_master"
+                + " WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        Set<String> schema = new HashSet<>();
+        while (cursor.moveToNext()) {
+            schema.add(cursor.getString(0) + " " + cursor.getString(1) + " on "
+                    + cursor.getString(2));
+        }
+        cursor.close();
+        return schema;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.AllocationBenchmark;
+
+/*
+    Checks that a snapshot query of the forecast list reads the same as the SQLite one, and
+    compares what querying and binding a two week forecast costs through either cursor: the
+    array cursor must allocate less, how long either takes is logged.
+ */
+public class TestForecastArrayCursor extends AndroidTestCase {
+
+    private static final int DAYS = 14;
+    private static final int TIMING_ROUNDS = 50;
+    private static final long DAY = 86400000L;
+
+    // The forecast list's projection
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String SORT_BY_DATE = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] rows = new ContentValues[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            rows[day] = TestUtilities.createWeatherValues(mLocationRowId);
+            rows[day].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + day * DAY);
+            rows[day].put(WeatherEntry.COLUMN_MAX_TEMP, 75.5 + day);
+            rows[day].put(WeatherEntry.COLUMN_WEATHER_ID, 800 + day);
+        }
+        assertEquals(DAYS, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, rows));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testSnapshotMatchesDatabase() {
+        Cursor expected = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE), FORECAST_COLUMNS, null, null, SORT_BY_DATE);
+        Cursor actual = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationSnapshot(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE), FORECAST_COLUMNS, null, null, SORT_BY_DATE);
+
+        assertEquals(DAYS, expected.getCount());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getColumnCount(), actual.getColumnCount());
+        for (int column = 0; column < expected.getColumnCount(); column++) {
+            assertEquals(expected.getColumnName(column), actual.getColumnName(column));
+        }
+        while (expected.moveToNext()) {
+            assertTrue(actual.moveToNext());
+            for (int column = 0; column < expected.getColumnCount(); column++) {
+                if (column == 2 || column == 5) {
+                    // The text columns are compared as text below
+                    continue;
+                }
+                String error = "Error: row " + expected.getPosition() + " differs in "
+                        + expected.getColumnName(column);
+                assertEquals(error, expected.getLong(column), actual.getLong(column));
+                assertEquals(error, expected.getDouble(column), actual.getDouble(column));
+                assertEquals(error, expected.isNull(column), actual.isNull(column));
+            }
+            assertEquals(expected.getString(1), actual.getString(1));
+            assertEquals(expected.getString(2), actual.getString(2));
+            assertEquals(expected.getString(5), actual.getString(5));
+        }
+        assertFalse(actual.moveToNext());
+        expected.close();
+        actual.close();
+    }
+
+    // Columns the snapshot doesn't keep are read from the database
+    public void testOtherProjectionFallsBack() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationSnapshot(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE),
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_HUMIDITY},
+                null, null, SORT_BY_DATE);
+        assertEquals(DAYS, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1.2, cursor.getDouble(1));
+        cursor.close();
+    }
+
+    public void testSnapshotFollowsWrites() {
+        Uri snapshotUri = WeatherEntry.buildWeatherLocationSnapshot(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        Cursor before = mContext.getContentResolver().query(snapshotUri, FORECAST_COLUMNS,
+                null, null, SORT_BY_DATE);
+        assertEquals(DAYS, before.getCount());
+        before.close();
+
+        ContentValues extraDay = TestUtilities.createWeatherValues(mLocationRowId);
+        extraDay.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + DAYS * DAY);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, extraDay);
+
+        Cursor after = mContext.getContentResolver().query(snapshotUri, FORECAST_COLUMNS,
+                null, null, SORT_BY_DATE);
+        assertEquals("Error: snapshot kept after a write", DAYS + 1, after.getCount());
+        after.close();
+    }
+
+    // The snapshot is read from memory and keeps its strings, the SQLite cursor fills a window
+    // and makes a new string for every text it reads
+    public void testAllocations() {
+        AllocationBenchmark.assertAllocatesLess("Forecast of " + DAYS + " days", TIMING_ROUNDS,
+                new QueryTask("SQLiteCursor", WeatherEntry.buildWeatherLocationWithStartDate(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE)),
+                new QueryTask("array cursor", WeatherEntry.buildWeatherLocationSnapshot(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE)));
+    }
+
+    // Queries the forecast and binds every row
+    private class QueryTask extends AllocationBenchmark.Task {
+        private final Uri mUri;
+
+        QueryTask(String name, Uri uri) {
+            super(name);
+            mUri = uri;
+        }
+
+        @Override
+        protected void run() {
+            Cursor cursor = mContext.getContentResolver().query(mUri, FORECAST_COLUMNS, null,
+                    null, SORT_BY_DATE);
+            assertEquals(DAYS, bind(cursor));
+            cursor.close();
+        }
+    }
+
+    // Reads every row the way the forecast list binds it
+    private static int bind(Cursor cursor) {
+        int rows = 0;
+        for (boolean more = cursor.moveToFirst(); more; more = cursor.moveToNext()) {
+            cursor.getLong(0);
+            cursor.getLong(1);
+            cursor.getString(2);
+            cursor.getDouble(3);
+            cursor.getDouble(4);
+            cursor.getString(5);
+            cursor.getInt(6);
+            rows++;
+        }
+        return rows;
+    }
+}
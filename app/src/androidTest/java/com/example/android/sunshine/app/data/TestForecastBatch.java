@@ -0,0 +1,70 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that a forecast batch grows past its capacity, finds its days by date and turns them
+    back into the same rows the provider stores.
+ */
+public class TestForecastBatch extends AndroidTestCase {
+
+    private static final long DAY = 86400000L;
+
+    public void testGrowAndFind() {
+        ForecastBatch days = new ForecastBatch(1);
+        for (int i = 0; i < 20; i++) {
+            days.add(TestUtilities.TEST_DATE + i * DAY, 800 + i, "Clear", 20.0 + i, 10.0,
+                    90, 1013.2, 2.31, 2.0);
+        }
+        assertEquals(20, days.size());
+        assertEquals(7, days.indexOfDate(TestUtilities.TEST_DATE + 7 * DAY));
+        assertEquals(807, days.getWeatherId(7));
+        assertTrue("Error: found a day that isn't there",
+                days.indexOfDate(TestUtilities.TEST_DATE - DAY) < 0);
+
+        days.clear();
+        assertEquals(0, days.size());
+        assertTrue(days.indexOfDate(TestUtilities.TEST_DATE) < 0);
+    }
+
+    public void testSameDayAndContentValues() {
+        ContentValues expected = TestUtilities.createWeatherValues(1);
+        expected.remove(WeatherEntry.COLUMN_LOC_KEY);
+
+        ForecastBatch days = new ForecastBatch();
+        days.add(expected.getAsLong(WeatherEntry.COLUMN_DATE),
+                expected.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                expected.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                expected.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                expected.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                expected.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                expected.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                expected.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                expected.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+        ContentValues actual = days.toContentValues(0);
+        assertEquals(expected.size(), actual.size());
+        for (String column : expected.keySet()) {
+            if (WeatherEntry.COLUMN_SHORT_DESC.equals(column)) {
+                assertEquals(expected.getAsString(column), actual.getAsString(column));
+            } else {
+                assertEquals("Error: batch row differs in " + column,
+                        expected.getAsDouble(column), actual.getAsDouble(column));
+            }
+        }
+
+        ForecastBatch other = new ForecastBatch();
+        other.add(days.getDate(0), days.getWeatherId(0), days.getDescription(0),
+                days.getMaxTemp(0), days.getMinTemp(0), days.getHumidity(0),
+                days.getPressure(0), days.getWindSpeed(0), days.getDegrees(0));
+        assertTrue(days.sameDay(0, other, 0));
+
+        other.clear();
+        other.add(days.getDate(0), days.getWeatherId(0), "Rain",
+                days.getMaxTemp(0), days.getMinTemp(0), days.getHumidity(0),
+                days.getPressure(0), days.getWindSpeed(0), days.getDegrees(0));
+        assertFalse("Error: a different description is the same day", days.sameDay(0, other, 0));
+    }
+}
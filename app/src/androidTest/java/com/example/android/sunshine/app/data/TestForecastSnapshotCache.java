@@ -0,0 +1,70 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that today's snapshot is read once and shared until a write through the provider
+    changes the weather.
+ */
+public class TestForecastSnapshotCache extends AndroidTestCase {
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testSnapshotSharedUntilWrite() {
+        assertNull("Error: snapshot without any weather stored",
+                ForecastSnapshotCache.getToday(mContext, TestUtilities.TEST_LOCATION));
+
+        ContentValues today = TestUtilities.createWeatherValues(mLocationRowId);
+        today.put(WeatherEntry.COLUMN_DATE,
+                WeatherContract.normalizeDate(System.currentTimeMillis()));
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, today);
+
+        TodaySnapshot first = ForecastSnapshotCache.getToday(mContext, TestUtilities.TEST_LOCATION);
+        assertNotNull(first);
+        assertEquals(today.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP), first.high);
+        assertSame("Error: snapshot read again without a write",
+                first, ForecastSnapshotCache.getToday(mContext, TestUtilities.TEST_LOCATION));
+
+        ContentValues changed = new ContentValues();
+        changed.put(WeatherEntry.COLUMN_MAX_TEMP, 42.0);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, changed, null, null);
+
+        TodaySnapshot second = ForecastSnapshotCache.getToday(mContext, TestUtilities.TEST_LOCATION);
+        assertNotSame("Error: snapshot kept after a write", first, second);
+        assertEquals(42.0, second.high);
+    }
+
+    public void testSnapshotPerLocation() {
+        ContentValues today = TestUtilities.createWeatherValues(mLocationRowId);
+        today.put(WeatherEntry.COLUMN_DATE,
+                WeatherContract.normalizeDate(System.currentTimeMillis()));
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, today);
+
+        assertNotNull(ForecastSnapshotCache.getToday(mContext, TestUtilities.TEST_LOCATION));
+        assertNull("Error: snapshot of another location returned",
+                ForecastSnapshotCache.getToday(mContext, "elsewhere"));
+    }
+}
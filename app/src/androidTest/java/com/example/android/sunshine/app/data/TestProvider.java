@@ -16,6 +16,8 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -27,6 +29,8 @@ import android.os.Build;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import java.util.ArrayList;
+
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -51,6 +55,11 @@ public class TestProvider extends AndroidTestCase {
        the delete functionality in the ContentProvider.
      */
     public void deleteAllRecordsFromProvider() {
+        mContext.getContentResolver().delete(
+                WeatherContract.HourlyEntry.CONTENT_URI,
+                null,
+                null
+        );
         mContext.getContentResolver().delete(
                 WeatherEntry.CONTENT_URI,
                 null,
@@ -512,4 +521,242 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Bulk inserting a day that's already stored should update its row in place rather than
+    // replacing it, and leave the other days alone.
+    public void testBulkInsertUpdatesExistingDays() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToFirst());
+        long firstRowId = cursor.getLong(0);
+        cursor.close();
+
+        ContentValues changedDay = new ContentValues(bulkInsertContentValues[0]);
+        changedDay.put(WeatherEntry.COLUMN_MAX_TEMP, 42.0);
+        int updateCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{changedDay});
+        assertEquals(1, updateCount);
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: bulk insert of an existing day added a row",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: bulk insert of an existing day replaced its row",
+                firstRowId, cursor.getLong(cursor.getColumnIndex(WeatherEntry._ID)));
+        TestUtilities.validateCurrentRecord("testBulkInsertUpdatesExistingDays. Error validating "
+                + "the updated day", cursor, changedDay);
+        cursor.close();
+    }
+
+    // A location keeps its days in a ring of slots, the day after the last slot takes the row
+    // of the first day instead of adding one
+    public void testNewDayOverwritesPassedDay() {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        ContentValues[] days = new ContentValues[WeatherEntry.SLOT_COUNT + 1];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = TestUtilities.createWeatherValues(locationRowId);
+            days[i].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i * millisecondsInADay);
+            days[i].put(WeatherEntry.COLUMN_MAX_TEMP, 75.0 + i);
+        }
+        ContentValues[] ring = new ContentValues[WeatherEntry.SLOT_COUNT];
+        System.arraycopy(days, 0, ring, 0, ring.length);
+        assertEquals(ring.length, mContext.getContentResolver().bulkInsert(
+                WeatherEntry.CONTENT_URI, ring));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToFirst());
+        long firstRowId = cursor.getLong(0);
+        cursor.close();
+
+        ContentValues nextDay = days[WeatherEntry.SLOT_COUNT];
+        assertEquals(1, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{nextDay}));
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: a new day was added next to the ring of the location",
+                WeatherEntry.SLOT_COUNT, cursor.getCount());
+        assertTrue(cursor.moveToLast());
+        assertEquals("Error: the new day didn't take the row of the first one",
+                firstRowId, cursor.getLong(cursor.getColumnIndex(WeatherEntry._ID)));
+        TestUtilities.validateCurrentRecord("testNewDayOverwritesPassedDay.  Error validating "
+                + "the new day", cursor, nextDay);
+        cursor.close();
+    }
+
+    // A batch should be written in one go, with the weather rows of a new location taking its
+    // id by back reference, and observers told about each uri once rather than once per row.
+    public void testApplyBatch() throws Exception {
+        String authority = WeatherContract.CONTENT_AUTHORITY;
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        for (ContentValues values : weatherValues) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        // Nothing is old enough, but the delete still takes part in the batch
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " < ?",
+                        new String[]{Long.toString(TestUtilities.TEST_DATE)})
+                .build());
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(LocationEntry.CONTENT_URI, true, locationObserver);
+
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(authority, operations);
+
+        // Any stray notification of the batch arrives before these
+        Uri weatherFence = WeatherEntry.CONTENT_URI.buildUpon().appendPath("fence").build();
+        Uri locationFence = LocationEntry.CONTENT_URI.buildUpon().appendPath("fence").build();
+        mContext.getContentResolver().notifyChange(weatherFence, null);
+        mContext.getContentResolver().notifyChange(locationFence, null);
+        weatherObserver.waitForNotificationOrFail(weatherFence);
+        locationObserver.waitForNotificationOrFail(locationFence);
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        mContext.getContentResolver().unregisterContentObserver(locationObserver);
+        assertEquals("Error: weather observer notified once per operation", 1, weatherObserver.mChangeCount - 1);
+        assertEquals("Error: location observer notified more than once", 1, locationObserver.mChangeCount - 1);
+
+        assertEquals(operations.size(), results.length);
+        assertEquals(0, (int) results[results.length - 1].count);
+        long locationRowId = ContentUris.parseId(results[0].uri);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            weatherValues[i].put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            TestUtilities.validateCurrentRecord("testApplyBatch.  Error validating WeatherEntry " + i,
+                    cursor, weatherValues[i]);
+        }
+        cursor.close();
+    }
+
+    // A batch that fails part way should leave nothing behind.
+    public void testApplyBatchRollsBack() throws Exception {
+        String authority = WeatherContract.CONTENT_AUTHORITY;
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        // The provider can't update single weather rows
+        operations.add(ContentProviderOperation.newUpdate(WeatherEntry.buildWeatherUri(1))
+                .withValue(WeatherEntry.COLUMN_MAX_TEMP, 42)
+                .build());
+
+        try {
+            mContext.getContentResolver().applyBatch(authority, operations);
+            fail("Error: batch with an unsupported operation succeeded");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: failed batch left its location behind", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    // Inserting a location that's already stored should hand back its row instead of failing
+    public void testInsertExistingLocation() {
+        Uri first = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        Uri second = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        assertEquals("Error: inserting an existing location returned another row", first, second);
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    // Weather queries by location setting resolve it to the location's id once, and must not
+    // keep using the id of a location that was deleted and added again
+    public void testLocationIdFollowsChanges() {
+        Uri weatherLocationUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        for (int i = 0; i < 2; i++) {
+            deleteAllRecordsFromProvider();
+            // The second time round another location takes the id this one had
+            if (i == 1) {
+                ContentValues other = TestUtilities.createNorthPoleLocationValues();
+                other.put(LocationEntry.COLUMN_LOCATION_SETTING, "other");
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, other);
+            }
+            Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                    TestUtilities.createNorthPoleLocationValues());
+            ContentValues weatherValues =
+                    TestUtilities.createWeatherValues(ContentUris.parseId(locationUri));
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+            Cursor cursor = mContext.getContentResolver().query(weatherLocationUri,
+                    null, null, null, null);
+            TestUtilities.validateCursor("testLocationIdFollowsChanges.  Error validating round "
+                    + i, cursor, weatherValues);
+        }
+    }
+
+    // Hourly slots are stored as scaled integers and queried by a range of their start times
+    public void testHourlyRange() {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        long threeHours = 3 * 60 * 60 * 1000L;
+        // Slots start on the hour
+        long start = WeatherContract.HourlyEntry.toMillis(
+                WeatherContract.HourlyEntry.toHour(TestUtilities.TEST_DATE));
+        HourlyBatch slots = new HourlyBatch();
+        for (int i = 0; i < 8; i++) {
+            slots.add(start + i * threeHours, 800, -1.25 + i, 80, 1013.25,
+                    4.77, 232.5);
+        }
+        ContentValues[] rows = new ContentValues[slots.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = slots.toContentValues(i);
+            rows[i].put(WeatherContract.HourlyEntry.COLUMN_LOC_KEY, locationRowId);
+        }
+        assertEquals(rows.length, mContext.getContentResolver().bulkInsert(
+                WeatherContract.HourlyEntry.CONTENT_URI, rows));
+        // A newer forecast of a slot replaces it
+        assertEquals(1, mContext.getContentResolver().bulkInsert(
+                WeatherContract.HourlyEntry.CONTENT_URI, new ContentValues[]{rows[2]}));
+
+        // The slots starting from the third up to the sixth
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.HourlyEntry.buildHourlyLocationWithRange(
+                        TestUtilities.TEST_LOCATION, start + 2 * threeHours,
+                        start + 6 * threeHours),
+                new String[]{WeatherContract.HourlyEntry.COLUMN_HOUR,
+                        WeatherContract.HourlyEntry.COLUMN_TEMP},
+                null, null, WeatherContract.HourlyEntry.COLUMN_HOUR + " ASC");
+        assertEquals(4, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(start + 2 * threeHours,
+                WeatherContract.HourlyEntry.toMillis(cursor.getLong(0)));
+        assertEquals(0.8, WeatherContract.HourlyEntry.fromScaled(cursor.getInt(1)));
+        cursor.close();
+    }
 }
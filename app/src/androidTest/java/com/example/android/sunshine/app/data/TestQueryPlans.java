@@ -0,0 +1,146 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+    Runs EXPLAIN QUERY PLAN on the queries the app makes of every route of the provider and
+    fails if one of them has to scan a whole table or sort its results in a temporary b-tree.
+ */
+public class TestQueryPlans extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlans.class.getSimpleName();
+
+    // The columns of the forecast list, the widgets and Muzei read
+    private static final String[] LIST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String SORT_BY_DATE = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private SQLiteDatabase mDb;
+    private final Set<Integer> mCheckedRoutes = new HashSet<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testEveryRouteUsesAnIndex() {
+        // The forecast list, the widgets and Muzei
+        checkPlan(WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE), LIST_COLUMNS, null, null, SORT_BY_DATE, true);
+        checkPlan(WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                LIST_COLUMNS, null, null, SORT_BY_DATE, true);
+        // The detail screen and today's weather
+        checkPlan(WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE), null, null, null, null, false);
+        // What the sync overwrites and updates
+        checkPlan(WeatherEntry.CONTENT_URI, new String[]{WeatherEntry._ID},
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_SLOT + " = ?",
+                new String[]{"1", "0"}, null, false);
+        checkPlan(WeatherEntry.CONTENT_URI, new String[]{WeatherEntry._ID},
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{"1", Long.toString(TestUtilities.TEST_DATE)}, null, false);
+        checkPlan(WeatherEntry.CONTENT_URI, new String[]{WeatherEntry._ID},
+                WeatherEntry.COLUMN_DATE + " <= ?",
+                new String[]{Long.toString(TestUtilities.TEST_DATE)}, null, false);
+        // How a location setting is resolved to its id
+        checkPlan(LocationEntry.CONTENT_URI, new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TestUtilities.TEST_LOCATION}, null, false);
+
+        // The hourly forecast, by time range and what the sync replaces
+        checkPlan(WeatherContract.HourlyEntry.buildHourlyLocationWithRange(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE,
+                TestUtilities.TEST_DATE + 86400000L), null, null, null,
+                WeatherContract.HourlyEntry.COLUMN_HOUR + " ASC", false);
+        checkPlan(WeatherContract.HourlyEntry.CONTENT_URI, null,
+                WeatherContract.HourlyEntry.COLUMN_LOC_KEY + " = ? AND "
+                        + WeatherContract.HourlyEntry.COLUMN_HOUR + " < ?",
+                new String[]{"1", "400000"}, null, false);
+
+        // The trends of a location
+        checkPlan(WeatherContract.ArchiveEntry.buildArchiveLocation(TestUtilities.TEST_LOCATION,
+                WeatherContract.ArchiveEntry.PERIOD_MONTH), null, null, null,
+                WeatherContract.ArchiveEntry.COLUMN_PERIOD_START + " ASC", false);
+        checkPlan(WeatherContract.ArchiveEntry.CONTENT_URI, null,
+                WeatherContract.ArchiveEntry.COLUMN_LOC_KEY + " = ?", new String[]{"1"}, null,
+                false);
+
+        assertEquals("Error: not every route of the provider was checked",
+                8, mCheckedRoutes.size());
+    }
+
+    // What the sync runs when it archives the days that have passed
+    public void testArchiveUsesAnIndex() {
+        String selection = WeatherArchive.buildNewDaysSelection(
+                WeatherEntry.COLUMN_DATE + " < ?");
+        String[] selectionArgs = WeatherArchive.buildNewDaysArgs(
+                new String[]{Long.toString(TestUtilities.TEST_DATE)}, TestUtilities.TEST_DATE);
+        checkPlan("count new days", WeatherArchive.sCountNewDaysSql + selection, selectionArgs,
+                false);
+        checkPlan("copy to history", WeatherArchive.sCopyToHistorySql + selection,
+                selectionArgs, false);
+        checkPlan("truncate archived locations", WeatherArchive.sTruncateArchivedLocationsSql,
+                new String[]{selectionArgs[0]}, false);
+    }
+
+    private void checkPlan(Uri uri, String[] projection, String selection,
+                           String[] selectionArgs, String sortOrder, boolean covering) {
+        mCheckedRoutes.add(WeatherProvider.buildUriMatcher().match(uri));
+        WeatherProvider.Query query = WeatherProvider.buildQuery(mDb, new LocationIdCache(), uri,
+                projection, selection, selectionArgs, sortOrder);
+        checkPlan(uri.toString(), query.sql, query.selectionArgs, covering);
+    }
+
+    private void checkPlan(String name, String sql, String[] selectionArgs, boolean covering) {
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        int detailIndex = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            plan.add(cursor.getString(detailIndex));
+        }
+        cursor.close();
+        Log.d(LOG_TAG, name + ": " + plan);
+
+        assertFalse("Error: empty query plan for " + name, plan.isEmpty());
+        for (String step : plan) {
+            assertFalse("Error: " + name + " scans a whole table: " + plan,
+                    step.startsWith("SCAN"));
+            assertFalse("Error: " + name + " sorts in a temporary b-tree: " + plan,
+                    step.contains("TEMP B-TREE"));
+            if (covering && step.contains(" " + WeatherEntry.TABLE_NAME + " ")) {
+                assertTrue("Error: " + name + " reads weather rows the index should cover: "
+                        + plan, step.contains("COVERING INDEX"));
+            }
+        }
+    }
+}
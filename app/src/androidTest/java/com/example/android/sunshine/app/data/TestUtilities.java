@@ -27,6 +27,9 @@ import android.test.AndroidTestCase;
 
 import com.example.android.sunshine.app.utils.PollingCheck;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -122,6 +125,9 @@ public class TestUtilities extends AndroidTestCase {
     static class TestContentObserver extends ContentObserver {
         final HandlerThread mHT;
         boolean mContentChanged;
+        volatile int mChangeCount;
+        // The uris notified so far, null where the platform doesn't pass one
+        final List<Uri> mUris = Collections.synchronizedList(new ArrayList<Uri>());
 
         static TestContentObserver getTestContentObserver() {
             HandlerThread ht = new HandlerThread("ContentObserverThread");
@@ -143,6 +149,8 @@ public class TestUtilities extends AndroidTestCase {
         @Override
         public void onChange(boolean selfChange, Uri uri) {
             mContentChanged = true;
+            mChangeCount++;
+            mUris.add(uri);
         }
 
         public void waitForNotificationOrFail() {
@@ -158,6 +166,18 @@ public class TestUtilities extends AndroidTestCase {
             }.run();
             mHT.quit();
         }
+
+        // Notifications reach an observer in the order they were sent, so once the one of the
+        // uri arrived so did every one before it
+        public void waitForNotificationOrFail(final Uri uri) {
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return mUris.contains(uri);
+                }
+            }.run();
+            mHT.quit();
+        }
     }
 
     static TestContentObserver getTestContentObserver() {
@@ -0,0 +1,123 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Holds a sync-sized write transaction open and checks that reads from other threads neither
+    wait for it nor see its rows, and logs how long those reads took.
+ */
+public class TestWalContention extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWalContention.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int READS = 20;
+    // Far longer than any read should take, far shorter than the writer holds its transaction
+    private static final long READ_TIMEOUT_MILLIS = 2000;
+
+    private WeatherDbHelper mDbHelper;
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+        mLocationId = mDbHelper.getWritableDatabase().insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(mLocationId != -1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    public void testWriteAheadLoggingEnabled() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+        assertTrue("Error: weather database isn't written ahead",
+                mDbHelper.getWritableDatabase().isWriteAheadLoggingEnabled());
+    }
+
+    public void testReadsDontWaitForWriter() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        final CountDownLatch written = new CountDownLatch(1);
+        final CountDownLatch readsDone = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Writes a forecast like a sync would, then holds on to the transaction until the
+            // reads are done
+            Future<?> writer = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    db.beginTransactionNonExclusive();
+                    try {
+                        ContentValues[] rows = TestProvider.createBulkInsertWeatherValues(mLocationId);
+                        for (int i = 0; i < DAYS && i < rows.length; i++) {
+                            db.insert(WeatherEntry.TABLE_NAME, null, rows[i]);
+                        }
+                        written.countDown();
+                        readsDone.await(READ_TIMEOUT_MILLIS * READS, TimeUnit.MILLISECONDS);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    return null;
+                }
+            });
+            assertTrue(written.await(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+            long totalNanos = 0;
+            long maxNanos = 0;
+            for (int i = 0; i < READS; i++) {
+                long start = System.nanoTime();
+                int count = executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        Cursor cursor = mDbHelper.getReadableDatabase().query(
+                                WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+                        try {
+                            return cursor.getCount();
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+                }).get(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                long elapsed = System.nanoTime() - start;
+                totalNanos += elapsed;
+                maxNanos = Math.max(maxNanos, elapsed);
+                assertEquals("Error: reader saw rows of an open transaction", 0, count);
+            }
+            readsDone.countDown();
+            writer.get();
+
+            Log.i(LOG_TAG, READS + " reads during a write: mean "
+                    + totalNanos / READS / 1000 + "us, max " + maxNanos / 1000 + "us");
+        } finally {
+            readsDone.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
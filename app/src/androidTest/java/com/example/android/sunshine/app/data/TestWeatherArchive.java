@@ -0,0 +1,225 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    Checks that archiving days keeps them in the history and the weekly and monthly aggregates,
+    the same whether they are archived at once or a few at a time, that a location is only
+    dropped from the weather table once all its days are archived, and that compaction drops
+    what is past its retention.
+ */
+public class TestWeatherArchive extends AndroidTestCase {
+
+    // Two weeks, which all fit in the slots of the location
+    private static final int DAYS = 14;
+    private static final long DAY = 86400000L;
+    // 2015-06-24, so the week of Monday 2015-06-29 spans the end of June
+    private static final long FIXED_FIRST_DATE = 1435104000000L;
+
+    private SQLiteDatabase mDb;
+    private long mLocationRowId;
+    private long mFirstDate;
+    private final long[] mDates = new long[DAYS];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+        clear();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+
+        // Recent enough to be kept by the compaction
+        insertDays(WeatherContract.normalizeDate(System.currentTimeMillis() - 40 * DAY));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clear();
+        mDb.close();
+        super.tearDown();
+    }
+
+    private void clear() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mDb.delete(HistoryEntry.TABLE_NAME, null, null);
+        mDb.delete(ArchiveEntry.TABLE_NAME, null, null);
+    }
+
+    private void insertDays(long firstDate) {
+        mFirstDate = firstDate;
+        ContentValues[] rows = new ContentValues[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            // From noon, so a change to or from daylight saving time can't skip a day
+            mDates[day] = WeatherContract.normalizeDate(mFirstDate + day * DAY + DAY / 2);
+            rows[day] = TestUtilities.createWeatherValues(mLocationRowId);
+            rows[day].put(WeatherEntry.COLUMN_DATE, mDates[day]);
+            rows[day].put(WeatherEntry.COLUMN_MAX_TEMP, 20.0 + day % 5);
+            rows[day].put(WeatherEntry.COLUMN_MIN_TEMP, 10.25 - day % 3);
+            rows[day].put(WeatherEntry.COLUMN_WEATHER_ID, day % 3 == 0 ? 500 : 800);
+        }
+        assertEquals(DAYS, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, rows));
+    }
+
+    public void testArchiveKeepsAggregates() {
+        Map<String, ContentValues> expected = computeExpected();
+
+        assertEquals(DAYS, archiveUpTo(mDates[DAYS - 1]));
+        assertEquals("Error: a location whose days are all archived kept them",
+                0, DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+        assertEquals(DAYS, DatabaseUtils.queryNumEntries(mDb, HistoryEntry.TABLE_NAME));
+        assertEquals(expected, readAggregates());
+    }
+
+    // A week that spans two months is recomputed whole, whichever month the first day archived
+    // falls in, and so is the month a week of those days starts in
+    public void testWeekAcrossMonthBoundary() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        insertDays(FIXED_FIRST_DATE);
+        Map<String, ContentValues> expected = computeExpected();
+
+        // A day at a time, as the sync archives them
+        long now = FIXED_FIRST_DATE + (DAYS + 1) * DAY;
+        for (int day = 0; day < DAYS; day++) {
+            mDb.beginTransaction();
+            try {
+                assertEquals(1, WeatherArchive.archive(mDb, WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(mDates[day])}, now));
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+        }
+        assertEquals(expected, readAggregates());
+    }
+
+    // The periods the days of a sync fall in are recomputed from the history each time
+    public void testArchiveInSteps() {
+        Map<String, ContentValues> expected = computeExpected();
+
+        for (int day = 0; day < DAYS; day += 3) {
+            assertTrue(archiveUpTo(mDates[day]) > 0);
+            assertEquals("Error: archived days were counted again", 0, archiveUpTo(mDates[day]));
+            assertEquals("Error: days left the weather table before their slot was taken",
+                    DAYS, DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+        }
+        archiveUpTo(mDates[DAYS - 1]);
+        assertEquals(expected, readAggregates());
+    }
+
+    public void testCompaction() {
+        archiveUpTo(mDates[DAYS - 1]);
+        long weeks = countPeriods(ArchiveEntry.PERIOD_WEEK);
+        long months = countPeriods(ArchiveEntry.PERIOD_MONTH);
+        assertTrue(weeks > 0 && months > 0);
+
+        WeatherArchive.compact(mDb, mFirstDate + (WeatherArchive.HISTORY_RETENTION_DAYS + DAYS) * DAY);
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDb, HistoryEntry.TABLE_NAME));
+        assertEquals(weeks, countPeriods(ArchiveEntry.PERIOD_WEEK));
+
+        WeatherArchive.compact(mDb, mFirstDate + (WeatherArchive.WEEK_RETENTION_DAYS + 60) * DAY);
+        assertEquals(0, countPeriods(ArchiveEntry.PERIOD_WEEK));
+        assertEquals(months, countPeriods(ArchiveEntry.PERIOD_MONTH));
+
+        WeatherArchive.compact(mDb, mFirstDate + (WeatherArchive.MONTH_RETENTION_DAYS + 60) * DAY);
+        assertEquals(0, countPeriods(ArchiveEntry.PERIOD_MONTH));
+    }
+
+    private int archiveUpTo(long date) {
+        return mContext.getContentResolver().delete(WeatherEntry.buildWeatherArchiveUri(),
+                WeatherEntry.COLUMN_DATE + " <= ?", new String[]{Long.toString(date)});
+    }
+
+    private long countPeriods(int period) {
+        return DatabaseUtils.queryNumEntries(mDb, ArchiveEntry.TABLE_NAME,
+                ArchiveEntry.COLUMN_PERIOD + " = ?", new String[]{Integer.toString(period)});
+    }
+
+    // The aggregates worked out one day at a time from the rows setUp inserted
+    private Map<String, ContentValues> computeExpected() {
+        Map<String, ContentValues> expected = new HashMap<>();
+        for (int period : new int[]{ArchiveEntry.PERIOD_WEEK, ArchiveEntry.PERIOD_MONTH}) {
+            Map<Long, int[]> weatherCounts = new HashMap<>();
+            Map<Long, long[]> sums = new HashMap<>();
+            for (int day = 0; day < DAYS; day++) {
+                long utcDay = WeatherArchive.toDay(mDates[day]);
+                long start = (period == ArchiveEntry.PERIOD_WEEK
+                        ? WeatherArchive.weekStartDay(utcDay)
+                        : WeatherArchive.monthStartDay(utcDay)) * DAY;
+                int high = (int) Math.round((20.0 + day % 5) * ArchiveEntry.SCALE);
+                int low = (int) Math.round((10.25 - day % 3) * ArchiveEntry.SCALE);
+
+                String key = period + "/" + start;
+                ContentValues values = expected.get(key);
+                if (values == null) {
+                    values = new ContentValues();
+                    values.put(ArchiveEntry.COLUMN_PERIOD, period);
+                    values.put(ArchiveEntry.COLUMN_PERIOD_START, start);
+                    values.put(ArchiveEntry.COLUMN_MIN_TEMP, low);
+                    values.put(ArchiveEntry.COLUMN_MAX_TEMP, high);
+                    expected.put(key, values);
+                    weatherCounts.put(start, new int[2]);
+                    sums.put(start, new long[2]);
+                }
+                values.put(ArchiveEntry.COLUMN_MIN_TEMP,
+                        Math.min(values.getAsInteger(ArchiveEntry.COLUMN_MIN_TEMP), low));
+                values.put(ArchiveEntry.COLUMN_MAX_TEMP,
+                        Math.max(values.getAsInteger(ArchiveEntry.COLUMN_MAX_TEMP), high));
+                weatherCounts.get(start)[day % 3 == 0 ? 0 : 1]++;
+                long[] sum = sums.get(start);
+                sum[0] += high + low;
+                sum[1]++;
+
+                int[] counts = weatherCounts.get(start);
+                // Ties go to the lower weather id
+                values.put(ArchiveEntry.COLUMN_WEATHER_ID, counts[0] >= counts[1] ? 500 : 800);
+                values.put(ArchiveEntry.COLUMN_DAY_COUNT, (int) sum[1]);
+                values.put(ArchiveEntry.COLUMN_MEAN_TEMP,
+                        (int) Math.round(sum[0] / (2.0 * sum[1])));
+            }
+        }
+        return expected;
+    }
+
+    private Map<String, ContentValues> readAggregates() {
+        Map<String, ContentValues> aggregates = new HashMap<>();
+        for (int period : new int[]{ArchiveEntry.PERIOD_WEEK, ArchiveEntry.PERIOD_MONTH}) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    ArchiveEntry.buildArchiveLocation(TestUtilities.TEST_LOCATION, period),
+                    new String[]{ArchiveEntry.COLUMN_PERIOD, ArchiveEntry.COLUMN_PERIOD_START,
+                            ArchiveEntry.COLUMN_MIN_TEMP, ArchiveEntry.COLUMN_MAX_TEMP,
+                            ArchiveEntry.COLUMN_WEATHER_ID, ArchiveEntry.COLUMN_DAY_COUNT,
+                            ArchiveEntry.COLUMN_MEAN_TEMP},
+                    null, null, null);
+            while (cursor.moveToNext()) {
+                ContentValues values = new ContentValues();
+                values.put(ArchiveEntry.COLUMN_PERIOD, cursor.getInt(0));
+                values.put(ArchiveEntry.COLUMN_PERIOD_START, cursor.getLong(1));
+                values.put(ArchiveEntry.COLUMN_MIN_TEMP, cursor.getInt(2));
+                values.put(ArchiveEntry.COLUMN_MAX_TEMP, cursor.getInt(3));
+                values.put(ArchiveEntry.COLUMN_WEATHER_ID, cursor.getInt(4));
+                values.put(ArchiveEntry.COLUMN_DAY_COUNT, cursor.getInt(5));
+                values.put(ArchiveEntry.COLUMN_MEAN_TEMP, cursor.getInt(6));
+                aggregates.put(cursor.getInt(0) + "/" + cursor.getLong(1), values);
+            }
+            cursor.close();
+        }
+        return aggregates;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+
+/*
+    Checks how a fresh forecast is classified against the stored one.
+ */
+public class TestAdaptiveSyncScheduler extends AndroidTestCase {
+
+    private static final long TEST_DATE = 1419033600L;  // December 20th, 2014
+    private static final long DAY = 86400000L;
+
+    public void testIdenticalRowsAreUnchanged() {
+        ForecastBatch stored = new ForecastBatch();
+        addDay(stored, TEST_DATE, 800, 20.0, 10.0);
+        ForecastBatch incoming = new ForecastBatch();
+        addDay(incoming, TEST_DATE, 800, 20.0, 10.0);
+
+        assertEquals(AdaptiveSyncScheduler.FORECAST_UNCHANGED,
+                AdaptiveSyncScheduler.classifyChange(stored, incoming));
+    }
+
+    public void testNewDayIsChanged() {
+        ForecastBatch stored = new ForecastBatch();
+        addDay(stored, TEST_DATE, 800, 20.0, 10.0);
+        ForecastBatch incoming = new ForecastBatch();
+        addDay(incoming, TEST_DATE, 800, 20.0, 10.0);
+        addDay(incoming, TEST_DATE + DAY, 800, 21.0, 11.0);
+
+        assertEquals(AdaptiveSyncScheduler.FORECAST_CHANGED,
+                AdaptiveSyncScheduler.classifyChange(stored, incoming));
+    }
+
+    public void testSmallDeltaIsChanged() {
+        ForecastBatch stored = new ForecastBatch();
+        addDay(stored, TEST_DATE, 800, 20.0, 10.0);
+        ForecastBatch incoming = new ForecastBatch();
+        addDay(incoming, TEST_DATE, 800, 21.0, 10.0);
+
+        assertEquals(AdaptiveSyncScheduler.FORECAST_CHANGED,
+                AdaptiveSyncScheduler.classifyChange(stored, incoming));
+    }
+
+    public void testWeatherTransitionIsVolatile() {
+        ForecastBatch stored = new ForecastBatch();
+        addDay(stored, TEST_DATE, 800, 20.0, 10.0);
+        ForecastBatch incoming = new ForecastBatch();
+        addDay(incoming, TEST_DATE, 501, 20.0, 10.0);
+
+        assertEquals(AdaptiveSyncScheduler.FORECAST_VOLATILE,
+                AdaptiveSyncScheduler.classifyChange(stored, incoming));
+    }
+
+    public void testTemperatureSwingIsVolatile() {
+        ForecastBatch stored = new ForecastBatch();
+        addDay(stored, TEST_DATE, 800, 20.0, 10.0);
+        ForecastBatch incoming = new ForecastBatch();
+        addDay(incoming, TEST_DATE, 800, 20.0, 5.0);
+
+        assertEquals(AdaptiveSyncScheduler.FORECAST_VOLATILE,
+                AdaptiveSyncScheduler.classifyChange(stored, incoming));
+    }
+
+    private static void addDay(ForecastBatch days, long date, int weatherId, double high,
+                               double low) {
+        days.add(date, weatherId, "Clear", high, low, 90, 1013.2, 2.31, 2.0);
+    }
+}
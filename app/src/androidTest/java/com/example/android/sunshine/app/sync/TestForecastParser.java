@@ -0,0 +1,121 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+
+/*
+    Checks that the streaming parser produces exactly the same rows as the JSONObject one.
+ */
+public class TestForecastParser extends AndroidTestCase {
+
+    // Julian day for December 20th, 2014
+    private static final int TEST_JULIAN_START_DAY = 2457012;
+
+    // A trimmed down copy of a real forecast/daily response, fields in the order OWM sends them
+    private static final String FORECAST_JSON = "{\"city\":{\"id\":5375480," +
+            "\"name\":\"Mountain View\",\"coord\":{\"lon\":-122.083847,\"lat\":37.386051}," +
+            "\"country\":\"US\",\"population\":0},\"cod\":\"200\",\"message\":0.0197,\"cnt\":3," +
+            "\"list\":[" +
+            "{\"dt\":1419019200,\"temp\":{\"day\":12.86,\"min\":9.26,\"max\":13.61,\"night\":9.26," +
+            "\"eve\":11.91,\"morn\":12.86},\"pressure\":1008.9,\"humidity\":100," +
+            "\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\"," +
+            "\"icon\":\"10d\"}],\"speed\":6.72,\"deg\":168,\"clouds\":92,\"rain\":6}," +
+            "{\"dt\":1419105600,\"temp\":{\"day\":13.1,\"min\":8.51,\"max\":13.1},\"pressure\":1013.2," +
+            "\"humidity\":97,\"weather\":[{\"id\":800,\"main\":\"Clear\"}],\"speed\":2.31,\"deg\":2}," +
+            "{\"dt\":1419192000,\"temp\":{\"day\":12.5,\"min\":7.08,\"max\":12.5},\"pressure\":1017.53," +
+            "\"humidity\":94.5,\"weather\":[{\"id\":802,\"main\":\"Clouds\"},{\"id\":701," +
+            "\"main\":\"Mist\"}],\"speed\":1.5,\"deg\":257.5}]}";
+
+    // The same forecast with the objects in a different order than OWM usually sends them
+    private static final String REORDERED_FORECAST_JSON = "{\"cnt\":3,\"list\":[" +
+            "{\"speed\":6.72,\"deg\":168,\"weather\":[{\"main\":\"Rain\",\"id\":501}]," +
+            "\"humidity\":100,\"pressure\":1008.9,\"temp\":{\"max\":13.61,\"min\":9.26}}," +
+            "{\"temp\":{\"min\":8.51,\"max\":13.1},\"pressure\":1013.2,\"humidity\":97," +
+            "\"weather\":[{\"id\":800,\"main\":\"Clear\"}],\"speed\":2.31,\"deg\":2}," +
+            "{\"temp\":{\"min\":7.08,\"max\":12.5},\"pressure\":1017.53,\"humidity\":94.5," +
+            "\"weather\":[{\"id\":802,\"main\":\"Clouds\"}],\"speed\":1.5,\"deg\":257.5}]," +
+            "\"city\":{\"coord\":{\"lat\":37.386051,\"lon\":-122.083847}," +
+            "\"name\":\"Mountain View\"},\"cod\":200}";
+
+    private static final String NOT_FOUND_JSON = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+
+    private static final String MISSING_CITY_JSON = "{\"cod\":\"200\",\"list\":[]}";
+
+    private static final String MISSING_FIELD_JSON = "{\"city\":{\"name\":\"Mountain View\"," +
+            "\"coord\":{\"lon\":-122.08,\"lat\":37.38}},\"list\":[{\"temp\":{\"min\":9.26," +
+            "\"max\":13.61},\"pressure\":1008.9,\"weather\":[{\"id\":501,\"main\":\"Rain\"}]," +
+            "\"speed\":6.72,\"deg\":168}]}";
+
+    public void testStreamingMatchesDom() throws Exception {
+        ForecastParser.Forecast dom = ForecastParser.parse(FORECAST_JSON, TEST_JULIAN_START_DAY);
+        ForecastParser.Forecast stream = ForecastParser.parse(
+                new StringReader(FORECAST_JSON), TEST_JULIAN_START_DAY);
+
+        assertEquals("Error: DOM parser read the wrong number of rows", 3, dom.days.size());
+        assertForecastsEqual(dom, stream);
+    }
+
+    public void testStreamingHandlesReorderedFields() throws Exception {
+        ForecastParser.Forecast dom = ForecastParser.parse(FORECAST_JSON, TEST_JULIAN_START_DAY);
+        ForecastParser.Forecast stream = ForecastParser.parse(
+                new StringReader(REORDERED_FORECAST_JSON), TEST_JULIAN_START_DAY);
+
+        assertForecastsEqual(dom, stream);
+    }
+
+    public void testErrorCode() throws Exception {
+        ForecastParser.Forecast dom = ForecastParser.parse(NOT_FOUND_JSON, TEST_JULIAN_START_DAY);
+        ForecastParser.Forecast stream = ForecastParser.parse(
+                new StringReader(NOT_FOUND_JSON), TEST_JULIAN_START_DAY);
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, dom.code);
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, stream.code);
+        assertEquals(0, stream.days.size());
+    }
+
+    public void testInvalidResponses() throws Exception {
+        String[] invalid = {MISSING_CITY_JSON, MISSING_FIELD_JSON, "{\"list\":{}}", "[]"};
+        for (String json : invalid) {
+            try {
+                ForecastParser.parse(json, TEST_JULIAN_START_DAY);
+                fail("Error: DOM parser accepted " + json);
+            } catch (JSONException expected) {
+            }
+            try {
+                ForecastParser.parse(new StringReader(json), TEST_JULIAN_START_DAY);
+                fail("Error: streaming parser accepted " + json);
+            } catch (JSONException expected) {
+            }
+        }
+    }
+
+    public void testTruncatedStream() throws Exception {
+        try {
+            // Cut the body off between the first and the second day
+            String truncated = FORECAST_JSON.substring(0, FORECAST_JSON.indexOf("{\"dt\":1419105600"));
+            ForecastParser.parse(new StringReader(truncated), TEST_JULIAN_START_DAY);
+            fail("Error: streaming parser accepted a truncated body");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static void assertForecastsEqual(ForecastParser.Forecast expected,
+                                             ForecastParser.Forecast actual) {
+        assertEquals(expected.code, actual.code);
+        assertEquals(expected.cityName, actual.cityName);
+        assertEquals(expected.cityLatitude, actual.cityLatitude);
+        assertEquals(expected.cityLongitude, actual.cityLongitude);
+        assertEquals("Error: parsers read a different number of rows",
+                expected.days.size(), actual.days.size());
+        for (int i = 0; i < expected.days.size(); i++) {
+            assertEquals("Error: row " + i + " differs", expected.days.toContentValues(i),
+                    actual.days.toContentValues(i));
+            assertTrue(expected.days.sameDay(i, actual.days, i));
+        }
+    }
+}
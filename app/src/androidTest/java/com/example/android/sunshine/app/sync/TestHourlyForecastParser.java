@@ -0,0 +1,73 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+
+/*
+    Checks that both hourly parsers read the same slots, scaled the way the table stores them.
+ */
+public class TestHourlyForecastParser extends AndroidTestCase {
+
+    // A trimmed down copy of a real forecast response, two slots
+    private static final String HOURLY_JSON = "{\"cod\":\"200\",\"message\":0.0032,\"cnt\":2," +
+            "\"list\":[{\"dt\":1419033600,\"main\":{\"temp\":9.26,\"temp_min\":9.26," +
+            "\"temp_max\":9.26,\"pressure\":1008.9,\"humidity\":82},\"weather\":[{\"id\":501," +
+            "\"main\":\"Rain\",\"description\":\"moderate rain\",\"icon\":\"10d\"}]," +
+            "\"clouds\":{\"all\":92},\"wind\":{\"speed\":6.72,\"deg\":168.5}," +
+            "\"dt_txt\":\"2014-12-20 00:00:00\"},{\"dt\":1419044400,\"main\":{\"temp\":-1.04," +
+            "\"pressure\":1011.35,\"humidity\":90},\"weather\":[{\"id\":800,\"main\":\"Clear\"}]," +
+            "\"wind\":{\"deg\":200,\"speed\":2.1}}]," +
+            "\"city\":{\"name\":\"Mountain View\",\"coord\":{\"lon\":-122.08,\"lat\":37.38}}}";
+
+    private static final String NOT_FOUND_JSON = "{\"cod\":\"404\",\"message\":\"city not found\"}";
+
+    public void testStreamingMatchesDom() throws Exception {
+        HourlyForecastParser.HourlyForecast dom = HourlyForecastParser.parse(HOURLY_JSON);
+        HourlyForecastParser.HourlyForecast stream = HourlyForecastParser.parse(
+                new StringReader(HOURLY_JSON));
+
+        assertEquals(2, dom.slots.size());
+        assertEquals(dom.slots.size(), stream.slots.size());
+        for (int i = 0; i < dom.slots.size(); i++) {
+            assertEquals("Error: slot " + i + " differs", dom.slots.toContentValues(i),
+                    stream.slots.toContentValues(i));
+        }
+
+        assertEquals(WeatherContract.HourlyEntry.toHour(1419033600L * 1000),
+                dom.slots.getHour(0));
+        assertEquals(93, dom.slots.getScaledTemp(0));
+        assertEquals(-10, dom.slots.getScaledTemp(1));
+        assertEquals(501, dom.slots.getWeatherId(0));
+    }
+
+    public void testErrorCode() throws Exception {
+        HourlyForecastParser.HourlyForecast dom = HourlyForecastParser.parse(NOT_FOUND_JSON);
+        HourlyForecastParser.HourlyForecast stream = HourlyForecastParser.parse(
+                new StringReader(NOT_FOUND_JSON));
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, dom.code);
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, stream.code);
+        assertEquals(0, stream.slots.size());
+    }
+
+    public void testIncompleteSlot() throws Exception {
+        String missingWind = "{\"list\":[{\"dt\":1419033600,\"main\":{\"temp\":9.26," +
+                "\"pressure\":1008.9,\"humidity\":82},\"weather\":[{\"id\":501}]}]}";
+        try {
+            HourlyForecastParser.parse(missingWind);
+            fail("Error: DOM parser accepted a slot without wind");
+        } catch (JSONException expected) {
+        }
+        try {
+            HourlyForecastParser.parse(new StringReader(missingWind));
+            fail("Error: streaming parser accepted a slot without wind");
+        } catch (JSONException expected) {
+        }
+    }
+}
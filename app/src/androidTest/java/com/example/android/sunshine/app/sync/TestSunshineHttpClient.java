@@ -0,0 +1,171 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.MockHttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    Exercises SunshineHttpClient against a local server: gzip bodies are asked for and decoded,
+    connections are reused and conditional requests come back without a body.  Also checks that
+    the sync tells an error status apart from a forecast it can't parse.
+ */
+public class TestSunshineHttpClient extends AndroidTestCase {
+
+    private static final String BODY = "{\"cod\":\"200\",\"list\":[]}";
+
+    private MockHttpServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockHttpServer();
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testGzipBodyIsDecoded() throws Exception {
+        byte[] compressed = gzip(BODY);
+        mServer.enqueue(new MockHttpServer.MockResponse(HttpURLConnection.HTTP_OK, compressed)
+                .addHeader("Content-Encoding", "gzip"));
+
+        SunshineHttpClient.Response response =
+                SunshineHttpClient.getInstance().get(mServer.getUrl("/forecast"));
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, response.getCode());
+            assertEquals("Error: gzip body wasn't decoded", BODY, readFully(response.getBody()));
+            assertEquals("Error: transferred bytes should count the compressed body",
+                    compressed.length, response.getTransferredBytes());
+        } finally {
+            response.close();
+        }
+
+        MockHttpServer.RecordedRequest request = mServer.takeRequest();
+        assertEquals("gzip", request.getHeader("Accept-Encoding"));
+    }
+
+    public void testPlainBody() throws Exception {
+        mServer.enqueue(new MockHttpServer.MockResponse(HttpURLConnection.HTTP_OK,
+                BODY.getBytes("UTF-8")));
+
+        SunshineHttpClient.Response response =
+                SunshineHttpClient.getInstance().get(mServer.getUrl("/forecast"));
+        try {
+            assertEquals(BODY, readFully(response.getBody()));
+        } finally {
+            response.close();
+        }
+    }
+
+    public void testConnectionIsReused() throws Exception {
+        mServer.enqueue(new MockHttpServer.MockResponse(HttpURLConnection.HTTP_OK,
+                BODY.getBytes("UTF-8")));
+        mServer.enqueue(new MockHttpServer.MockResponse(HttpURLConnection.HTTP_OK,
+                gzip(BODY)).addHeader("Content-Encoding", "gzip"));
+
+        // The first body is left unread on purpose, close() has to drain it
+        SunshineHttpClient.getInstance().get(mServer.getUrl("/first")).close();
+
+        SunshineHttpClient.Response second =
+                SunshineHttpClient.getInstance().get(mServer.getUrl("/second"));
+        try {
+            assertEquals(BODY, readFully(second.getBody()));
+        } finally {
+            second.close();
+        }
+
+        assertEquals("Error: the second request opened a new connection",
+                1, mServer.getConnectionCount());
+    }
+
+    public void testNotModifiedHasNoBody() throws Exception {
+        mServer.enqueue(new MockHttpServer.MockResponse(HttpURLConnection.HTTP_NOT_MODIFIED,
+                new byte[0]).addHeader("ETag", "\"v2\""));
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("If-None-Match", "\"v1\"");
+        SunshineHttpClient.Response response =
+                SunshineHttpClient.getInstance().get(mServer.getUrl("/forecast"), headers);
+        try {
+            assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, response.getCode());
+            assertEquals("\"v2\"", response.getHeader("ETag"));
+            assertEquals(-1, response.getBody().read());
+        } finally {
+            response.close();
+        }
+
+        MockHttpServer.RecordedRequest request = mServer.takeRequest();
+        assertEquals("\"v1\"", request.getHeader("If-None-Match"));
+    }
+
+    // An outage comes with an error page, which must not be taken for a broken forecast
+    public void testServerErrorIsAnOutage() throws Exception {
+        mServer.enqueue(new MockHttpServer.MockResponse(HttpURLConnection.HTTP_UNAVAILABLE,
+                "<html><body>Service Unavailable</body></html>".getBytes("UTF-8"))
+                .addHeader("Content-Type", "text/html"));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, readDailyStatus());
+    }
+
+    public void testNotFoundIsAnInvalidLocation() throws Exception {
+        mServer.enqueue(new MockHttpServer.MockResponse(HttpURLConnection.HTTP_NOT_FOUND,
+                "{\"cod\":\"404\",\"message\":\"city not found\"}".getBytes("UTF-8")));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, readDailyStatus());
+    }
+
+    public void testTimings() throws Exception {
+        mServer.enqueue(new MockHttpServer.MockResponse(HttpURLConnection.HTTP_OK,
+                BODY.getBytes("UTF-8")));
+
+        SunshineHttpClient.Response response =
+                SunshineHttpClient.getInstance().get(mServer.getUrl("/forecast"));
+        response.close();
+
+        assertTrue(response.getConnectMillis() >= 0);
+        assertTrue(response.getTimeToFirstByteMillis() >= 0);
+        assertTrue(response.getTransferMillis() >= 0);
+        assertEquals(BODY.length(), response.getTransferredBytes());
+    }
+
+    private int readDailyStatus() throws IOException {
+        SunshineSyncAdapter.LocationForecast result =
+                new SunshineSyncAdapter.LocationForecast("99705");
+        result.response = SunshineHttpClient.getInstance().get(mServer.getUrl("/forecast"));
+        try {
+            SunshineSyncAdapter.FetchForecastTask.readDaily(result, 2457000);
+        } finally {
+            result.response.close();
+        }
+        assertNull(result.forecast);
+        return result.status;
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toString("UTF-8");
+    }
+}
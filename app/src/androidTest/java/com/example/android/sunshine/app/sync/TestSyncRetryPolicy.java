@@ -0,0 +1,40 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.util.Random;
+
+/*
+    Checks the bounds of the retry delays.
+ */
+public class TestSyncRetryPolicy extends AndroidTestCase {
+
+    public void testBackoffGrowsWithinJitterBounds() {
+        Random random = new Random(42);
+        for (int failures = 1; failures <= SyncRetryPolicy.MAX_RETRIES; failures++) {
+            long full = Math.min(SyncRetryPolicy.BASE_DELAY_SECONDS << (failures - 1),
+                    SyncRetryPolicy.MAX_DELAY_SECONDS);
+            for (int i = 0; i < 100; i++) {
+                long delay = SyncRetryPolicy.getBackoffSeconds(failures, random);
+                assertTrue("Error: delay " + delay + " below half of " + full, delay >= full / 2);
+                assertTrue("Error: delay " + delay + " above " + full, delay <= full);
+            }
+        }
+    }
+
+    public void testBackoffIsCapped() {
+        Random random = new Random(42);
+        assertTrue(SyncRetryPolicy.getBackoffSeconds(1000, random)
+                <= SyncRetryPolicy.MAX_DELAY_SECONDS);
+    }
+
+    public void testJitterSpreadsRetries() {
+        Random random = new Random(42);
+        long first = SyncRetryPolicy.getBackoffSeconds(5, random);
+        boolean different = false;
+        for (int i = 0; i < 20 && !different; i++) {
+            different = SyncRetryPolicy.getBackoffSeconds(5, random) != first;
+        }
+        assertTrue("Error: every retry got the same delay", different);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.sunshine.app.utils;
+
+import android.os.Debug;
+import android.util.Log;
+
+import junit.framework.Assert;
+
+/*
+    Compares two ways of doing the same work by the objects they allocate on the calling thread,
+    which unlike their timings doesn't depend on what else the device is doing.  The timings are
+    logged along with the counts.  Debug's allocation counting is deprecated, but still counts.
+ */
+public class AllocationBenchmark {
+    public static final String LOG_TAG = AllocationBenchmark.class.getSimpleName();
+
+    /*
+        One of the ways of doing the work.  prepare() runs before every run(), outside of what
+        is counted and timed.
+     */
+    public static abstract class Task {
+        final String mName;
+
+        protected Task(String name) {
+            mName = name;
+        }
+
+        protected void prepare(int round) {
+        }
+
+        protected abstract void run();
+    }
+
+    private AllocationBenchmark() {
+    }
+
+    /**
+     * Runs both tasks the given number of rounds and fails unless the second allocates less
+     * than the first.
+     *
+     * @param what the work both tasks do, for the log
+     */
+    @SuppressWarnings("deprecation")
+    public static void assertAllocatesLess(String what, int rounds, Task baseline, Task cheaper) {
+        Task[] tasks = {baseline, cheaper};
+        long[] nanos = new long[tasks.length];
+        long[] allocations = new long[tasks.length];
+        Debug.startAllocCounting();
+        try {
+            for (int round = 0; round < rounds; round++) {
+                // Alternate the order so neither task always gets the warmer caches
+                for (int pass = 0; pass < tasks.length; pass++) {
+                    int index = (round + pass) % tasks.length;
+                    tasks[index].prepare(round);
+                    Debug.resetThreadAllocCount();
+                    long start = System.nanoTime();
+                    tasks[index].run();
+                    nanos[index] += System.nanoTime() - start;
+                    allocations[index] += Debug.getThreadAllocCount();
+                }
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+
+        Log.i(LOG_TAG, what + ": " + baseline.mName + " " + nanos[0] / rounds / 1000 + "us, "
+                + allocations[0] / rounds + " allocations, " + cheaper.mName + " "
+                + nanos[1] / rounds / 1000 + "us, " + allocations[1] / rounds + " allocations");
+        Assert.assertTrue("Error: " + cheaper.mName + " allocates as much as " + baseline.mName
+                + " for " + what, allocations[1] < allocations[0]);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    A tiny HTTP/1.1 server on the loopback interface for the network tests.  It answers every
+    request with the next enqueued response and keeps connections open between requests, so a
+    test can tell whether a client reused its connection from getConnectionCount().
+ */
+public class MockHttpServer {
+    private static final long TAKE_TIMEOUT_SECONDS = 5;
+
+    private final BlockingQueue<MockResponse> mResponses = new LinkedBlockingQueue<>();
+    private final BlockingQueue<RecordedRequest> mRequests = new LinkedBlockingQueue<>();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final List<Socket> mSockets = new ArrayList<>();
+    private ServerSocket mServerSocket;
+
+    public void start() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptThread = new Thread("MockHttpServer") {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        };
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public void shutdown() throws IOException {
+        mServerSocket.close();
+        synchronized (mSockets) {
+            for (Socket socket : mSockets) {
+                socket.close();
+            }
+        }
+    }
+
+    public URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), path);
+    }
+
+    public void enqueue(MockResponse response) {
+        mResponses.add(response);
+    }
+
+    /**
+     * @return the next request the server received, waiting a little for it if necessary.
+     */
+    public RecordedRequest takeRequest() throws InterruptedException {
+        return mRequests.poll(TAKE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    private void acceptConnections() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                // The server was shut down
+                return;
+            }
+            mConnectionCount.incrementAndGet();
+            synchronized (mSockets) {
+                mSockets.add(socket);
+            }
+            Thread connectionThread = new Thread("MockHttpServer connection") {
+                @Override
+                public void run() {
+                    serveConnection(socket);
+                }
+            };
+            connectionThread.setDaemon(true);
+            connectionThread.start();
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(in)) != null) {
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && line.length() > 0) {
+                    int colon = line.indexOf(':');
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                            line.substring(colon + 1).trim());
+                }
+                mRequests.add(new RecordedRequest(requestLine, headers));
+
+                MockResponse response = mResponses.poll(TAKE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (response == null) {
+                    response = new MockResponse(500, new byte[0]);
+                }
+                writeResponse(out, response);
+            }
+        } catch (IOException | InterruptedException e) {
+            // The client or the server closed the connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void writeResponse(OutputStream out, MockResponse response)
+            throws IOException {
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(response.code).append(" Mock\r\n");
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("Content-Length: ").append(response.body.length).append("\r\n\r\n");
+        out.write(head.toString().getBytes("US-ASCII"));
+        out.write(response.body);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                String result = line.toString("US-ASCII");
+                return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+            }
+            line.write(b);
+        }
+        return null;
+    }
+
+    public static class MockResponse {
+        public final int code;
+        public final byte[] body;
+        public final Map<String, String> headers = new LinkedHashMap<>();
+
+        public MockResponse(int code, byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        public MockResponse addHeader(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    public static class RecordedRequest {
+        public final String requestLine;
+        private final Map<String, String> mHeaders;
+
+        RecordedRequest(String requestLine, Map<String, String> headers) {
+            this.requestLine = requestLine;
+            mHeaders = headers;
+        }
+
+        public String getHeader(String name) {
+            return mHeaders.get(name.toLowerCase(Locale.US));
+        }
+    }
+}
@@ -17,11 +17,11 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -30,21 +30,37 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ *
+ * The rows are copied out of the cursor, then formatted and compared with the rows shown on a
+ * background thread.  Only the days that changed are bound again, the others keep their views,
+ * images and animations, and binding a row only sets its views.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
+    // One thread is plenty for two weeks of rows, and keeps the updates in order
+    private static final Executor sDiffExecutor = Executors.newSingleThreadExecutor();
+
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // The days of the last cursor, not formatted yet
+    private ForecastList mDays = ForecastList.EMPTY;
+    // What the RecyclerView is shown, only ever replaced on the main thread
+    private ForecastList mRows = ForecastList.EMPTY;
+    // Counts the updates started, so an update that was overtaken by a newer one is dropped
+    private int mGeneration;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +89,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClick(mRows.getDate(adapterPosition), this);
             mICM.onClick(this);
         }
     }
@@ -124,63 +141,36 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
-        }
+        // Everything is formatted already, see ForecastRow
+        ForecastRow row = mRows.getRow(position);
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        if ( row.artUrl == null ) {
+            // In case the view was showing art from the network before
+            Glide.clear(forecastAdapterViewHolder.mIconView);
+            forecastAdapterViewHolder.mIconView.setImageResource(row.imageResource);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
+                    .load(row.artUrl)
+                    .error(row.imageResource)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        // the animator can use this to re-find the original view.  The name follows the day, rows
+        // that only move when others are inserted or removed aren't bound again.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + row.date);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(row.dateText);
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionA11y);
 
-        // For accessibility, we don't want a content description for the icon field
-        // because the information is repeated in the description view and the icon
-        // is not individually selectable
+        forecastAdapterViewHolder.mHighTempView.setText(row.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
-
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -194,7 +184,17 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
-        mUseTodayLayout = useTodayLayout;
+        if (mUseTodayLayout != useTodayLayout) {
+            mUseTodayLayout = useTodayLayout;
+            update();
+        }
+    }
+
+    /**
+     * Formats the rows again, for when a setting they are shown with has changed.
+     */
+    public void onDisplaySettingsChanged() {
+        update();
     }
 
     public int getSelectedItemPosition() {
@@ -208,14 +208,70 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mRows.size();
     }
 
+    /**
+     * Shows the rows of a new cursor.  The cursor is read straight away, the loader may close
+     * it once a newer one comes along, but the RecyclerView only hears about the rows once
+     * they have been formatted and compared with the ones it shows.
+     */
     public void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
-        notifyDataSetChanged();
-        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        mDays = newCursor == null ? ForecastList.EMPTY : ForecastList.fromCursor(newCursor);
+        update();
+        mEmptyView.setVisibility(isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * @return true if the last cursor has no rows, even while the rows of the cursor before it
+     * are still shown.
+     */
+    public boolean isEmpty() {
+        return mDays.size() == 0;
+    }
+
+    private void update() {
+        final ForecastList oldRows = mRows;
+        final ForecastList days = mDays;
+        final boolean useTodayLayout = mUseTodayLayout;
+        final int generation = ++mGeneration;
+        if (days.size() == 0) {
+            // Nothing to format
+            mRows = days;
+            notifyDataSetChanged();
+            return;
+        }
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ForecastList newRows = days.format(mContext, useTodayLayout);
+                final ForecastListDiff diff = oldRows.size() == 0
+                        ? null : ForecastListDiff.compute(oldRows, newRows);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer update started from the same rows, it wins
+                        if (generation == mGeneration) {
+                            mRows = newRows;
+                            if (diff == null) {
+                                notifyDataSetChanged();
+                            } else {
+                                diff.dispatchTo(ForecastAdapter.this);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the position of the day in the list shown, or RecyclerView.NO_POSITION.
+     */
+    public int getPositionForDate(long date) {
+        int position = mRows.getPositionForDate(date);
+        return position == -1 ? RecyclerView.NO_POSITION : position;
     }
 
     public Cursor getCursor() {
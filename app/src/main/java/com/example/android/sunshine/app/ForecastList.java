@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * The rows of the forecast list, copied out of the loader's cursor so the adapter can keep
+ * showing them while the next forecast is formatted and compared with them on another thread.
+ * Immutable.
+ *
+ * Rows are in ascending date order, one per day, the order the loader asks for.  The adapter
+ * only shows lists that went through {@link #format}.
+ */
+final class ForecastList {
+
+    static final ForecastList EMPTY = new ForecastList(0, 0);
+
+    // The day the rows were read on, "today" and "tomorrow" depend on it
+    final long today;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mHighs;
+    private final double[] mLows;
+    // null until the list is formatted
+    private final ForecastRow[] mRows;
+
+    private ForecastList(int size, long today) {
+        this.today = today;
+        mDates = new long[size];
+        mWeatherIds = new int[size];
+        mHighs = new double[size];
+        mLows = new double[size];
+        mRows = null;
+    }
+
+    // The same days, formatted
+    private ForecastList(ForecastList days, ForecastRow[] rows) {
+        today = days.today;
+        mDates = days.mDates;
+        mWeatherIds = days.mWeatherIds;
+        mHighs = days.mHighs;
+        mLows = days.mLows;
+        mRows = rows;
+    }
+
+    /**
+     * Reads every row of a cursor with the columns of {@link ForecastFragment}'s projection.
+     */
+    static ForecastList fromCursor(Cursor cursor) {
+        return fromCursor(cursor, WeatherContract.normalizeDate(System.currentTimeMillis()));
+    }
+
+    static ForecastList fromCursor(Cursor cursor, long today) {
+        ForecastList list = new ForecastList(cursor.getCount(), today);
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            list.mDates[i] = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            list.mWeatherIds[i] = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            list.mHighs[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+            list.mLows[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        }
+        return list;
+    }
+
+    /**
+     * Formats every row the way it is shown, which reads resources and settings; call it away
+     * from the main thread.
+     *
+     * @param useTodayLayout whether the first row is shown with the layout for today
+     */
+    ForecastList format(Context context, boolean useTodayLayout) {
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        ForecastRow[] rows = new ForecastRow[mDates.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = ForecastRow.format(context, mDates[i], mWeatherIds[i], mHighs[i], mLows[i],
+                    useTodayLayout && i == 0, localGraphics);
+        }
+        return new ForecastList(this, rows);
+    }
+
+    int size() {
+        return mDates.length;
+    }
+
+    /**
+     * @return the formatted row, only for a list that went through {@link #format}.
+     */
+    ForecastRow getRow(int position) {
+        return mRows[position];
+    }
+
+    long getDate(int position) {
+        return mDates[position];
+    }
+
+    int getWeatherId(int position) {
+        return mWeatherIds[position];
+    }
+
+    double getHigh(int position) {
+        return mHighs[position];
+    }
+
+    double getLow(int position) {
+        return mLows[position];
+    }
+
+    /**
+     * @return the position of the day, or -1 if it isn't in the list.
+     */
+    int getPositionForDate(long date) {
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the row at the position shows the same as the other list's row.
+     */
+    boolean sameContents(int position, ForecastList other, int otherPosition) {
+        if (mRows != null && other.mRows != null) {
+            // Also tells apart rows formatted with other settings
+            return mRows[position].equals(other.mRows[otherPosition]);
+        }
+        return today == other.today
+                && mDates[position] == other.mDates[otherPosition]
+                && mWeatherIds[position] == other.mWeatherIds[otherPosition]
+                && mHighs[position] == other.mHighs[otherPosition]
+                && mLows[position] == other.mLows[otherPosition];
+    }
+}
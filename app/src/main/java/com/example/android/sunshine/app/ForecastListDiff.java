@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * The inserts, removals and changes that turn one forecast list into the next, for the
+ * adapter to tell the RecyclerView about instead of rebinding every row.
+ *
+ * Both lists are sorted by date with one row per day, so a single walk over the two matches
+ * the days up; there are no moves to find.  Computing it only reads the two immutable lists,
+ * which is what lets the adapter do it away from the main thread.
+ */
+final class ForecastListDiff {
+
+    static final int INSERT = 0;
+    static final int REMOVE = 1;
+    static final int CHANGE = 2;
+
+    // type, position, count of each update, in the order they have to be applied
+    private int[] mUpdates = new int[3 * 4];
+    private int mSize;
+
+    private ForecastListDiff() {
+    }
+
+    /**
+     * Each update's position is that of the list as the updates before it left it, the way
+     * RecyclerView applies them.
+     */
+    static ForecastListDiff compute(ForecastList oldList, ForecastList newList) {
+        ForecastListDiff diff = new ForecastListDiff();
+        int oldIndex = 0;
+        int newIndex = 0;
+        int position = 0;
+        while (oldIndex < oldList.size() || newIndex < newList.size()) {
+            if (newIndex == newList.size() || (oldIndex < oldList.size()
+                    && oldList.getDate(oldIndex) < newList.getDate(newIndex))) {
+                // The old day isn't in the new list
+                diff.add(REMOVE, position);
+                oldIndex++;
+            } else if (oldIndex == oldList.size()
+                    || oldList.getDate(oldIndex) > newList.getDate(newIndex)) {
+                diff.add(INSERT, position);
+                newIndex++;
+                position++;
+            } else {
+                if (!oldList.sameContents(oldIndex, newList, newIndex)) {
+                    diff.add(CHANGE, position);
+                }
+                oldIndex++;
+                newIndex++;
+                position++;
+            }
+        }
+        // The first row has a layout of its own, whichever day moved up to it has to be bound
+        // again
+        if (oldList.size() > 0 && newList.size() > 0
+                && oldList.getDate(0) != newList.getDate(0)
+                && !diff.touchesFirstRow()) {
+            diff.add(CHANGE, 0);
+        }
+        return diff;
+    }
+
+    // Extends the last update if this one continues it
+    private void add(int type, int position) {
+        if (mSize > 0) {
+            int last = 3 * (mSize - 1);
+            int lastPosition = mUpdates[last + 1];
+            int lastCount = mUpdates[last + 2];
+            if (mUpdates[last] == type
+                    && ((type == REMOVE && position == lastPosition)
+                    || (type != REMOVE && position == lastPosition + lastCount))) {
+                mUpdates[last + 2]++;
+                return;
+            }
+        }
+        if (3 * mSize == mUpdates.length) {
+            mUpdates = Arrays.copyOf(mUpdates, 2 * mUpdates.length);
+        }
+        mUpdates[3 * mSize] = type;
+        mUpdates[3 * mSize + 1] = position;
+        mUpdates[3 * mSize + 2] = 1;
+        mSize++;
+    }
+
+    // Whether one of the updates already rebinds or inserts the row at the top
+    private boolean touchesFirstRow() {
+        for (int i = 0; i < mSize; i++) {
+            if (mUpdates[3 * i] != REMOVE && mUpdates[3 * i + 1] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int getType(int i) {
+        return mUpdates[3 * i];
+    }
+
+    int getPosition(int i) {
+        return mUpdates[3 * i + 1];
+    }
+
+    int getCount(int i) {
+        return mUpdates[3 * i + 2];
+    }
+
+    void dispatchTo(RecyclerView.Adapter<?> adapter) {
+        for (int i = 0; i < mSize; i++) {
+            switch (getType(i)) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(getPosition(i), getCount(i));
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(getPosition(i), getCount(i));
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(getPosition(i), getCount(i));
+            }
+        }
+    }
+}
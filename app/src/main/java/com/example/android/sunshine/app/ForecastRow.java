@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+/**
+ * One row of the forecast list as it is shown: every string already formatted and the image
+ * already looked up, so binding the row only sets views.  Rows are made on the adapter's
+ * background thread whenever the forecast or a setting it depends on changes.  Immutable.
+ */
+final class ForecastRow {
+    public final long date;
+    public final String dateText;
+    public final String description;
+    public final String descriptionA11y;
+    public final String highText;
+    public final String highA11y;
+    public final String lowText;
+    public final String lowA11y;
+    // Shown when there is no art url, or while it can't be loaded
+    public final int imageResource;
+    // null to show the image resource
+    public final String artUrl;
+
+    private ForecastRow(long date, String dateText, String description, String descriptionA11y,
+                        String highText, String highA11y, String lowText, String lowA11y,
+                        int imageResource, String artUrl) {
+        this.date = date;
+        this.dateText = dateText;
+        this.description = description;
+        this.descriptionA11y = descriptionA11y;
+        this.highText = highText;
+        this.highA11y = highA11y;
+        this.lowText = lowText;
+        this.lowA11y = lowA11y;
+        this.imageResource = imageResource;
+        this.artUrl = artUrl;
+    }
+
+    /**
+     * Formats a day of the forecast.
+     *
+     * @param todayLayout whether the row is shown with the layout for today
+     * @param localGraphics whether the art pack is the one built into the app
+     */
+    static ForecastRow format(Context context, long date, int weatherId, double high, double low,
+                              boolean todayLayout, boolean localGraphics) {
+        String description = Utility.getStringForWeatherCondition(context, weatherId);
+        String highText = Utility.formatTemperature(context, high);
+        String lowText = Utility.formatTemperature(context, low);
+        return new ForecastRow(date,
+                Utility.getFriendlyDayString(context, date, todayLayout),
+                description,
+                // For accessibility, the icon has no content description of its own because
+                // the information is repeated in the description view
+                context.getString(R.string.a11y_forecast, description),
+                highText,
+                context.getString(R.string.a11y_high_temp, highText),
+                lowText,
+                context.getString(R.string.a11y_low_temp, lowText),
+                todayLayout
+                        ? Utility.getArtResourceForWeatherCondition(weatherId)
+                        : Utility.getIconResourceForWeatherCondition(weatherId),
+                localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ForecastRow)) {
+            return false;
+        }
+        ForecastRow other = (ForecastRow) o;
+        return date == other.date
+                && imageResource == other.imageResource
+                && dateText.equals(other.dateText)
+                && description.equals(other.description)
+                && descriptionA11y.equals(other.descriptionA11y)
+                && highText.equals(other.highText)
+                && highA11y.equals(other.highA11y)
+                && lowText.equals(other.lowText)
+                && lowA11y.equals(other.lowA11y)
+                && (artUrl == null ? other.artUrl == null : artUrl.equals(other.artUrl));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (date ^ (date >>> 32));
+        result = 31 * result + dateText.hashCode();
+        result = 31 * result + description.hashCode();
+        result = 31 * result + highText.hashCode();
+        result = 31 * result + lowText.hashCode();
+        result = 31 * result + imageResource;
+        return result;
+    }
+}
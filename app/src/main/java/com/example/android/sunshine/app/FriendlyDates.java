@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats the days of the forecast the way {@link Utility} shows them.  The labels of the two
+ * weeks from today are made in one go and kept until the day changes, so formatting one of those
+ * days only looks its label up, without making a Time, a Date or a SimpleDateFormat.  Days
+ * further out, or in the past, are formatted with patterns kept for the locale and time zone.
+ *
+ * Like the formatting it replaces, a day is counted with the offset from UTC of now.  The labels
+ * are checked against the clock every hour, which also picks up a change of time zone or a
+ * switch to or from daylight saving time.
+ */
+final class FriendlyDates {
+    // Two weeks, the most the app asks for
+    static final int HORIZON_DAYS = 14;
+
+    private static final long DAY_IN_MILLIS = 86400000L;
+    private static final long HOUR_IN_MILLIS = 3600000L;
+    // Days up to a week from today are shown by their name only
+    private static final int NAMED_DAYS = 7;
+
+    /**
+     * The patterns of a locale and time zone.  SimpleDateFormat isn't thread safe, format with
+     * one only while holding the lock of its Patterns.
+     */
+    private static final class Patterns {
+        final Locale locale;
+        final String timeZoneId;
+        final SimpleDateFormat dayName;
+        final SimpleDateFormat shortDate;
+        final SimpleDateFormat monthDay;
+        final DateFormat date;
+
+        Patterns(Locale locale, TimeZone timeZone) {
+            this.locale = locale;
+            timeZoneId = timeZone.getID();
+            dayName = new SimpleDateFormat("EEEE", locale);
+            shortDate = new SimpleDateFormat("EEE MMM dd", locale);
+            monthDay = new SimpleDateFormat("MMMM dd", locale);
+            date = DateFormat.getDateInstance(DateFormat.DEFAULT, locale);
+            dayName.setTimeZone(timeZone);
+            shortDate.setTimeZone(timeZone);
+            monthDay.setTimeZone(timeZone);
+            date.setTimeZone(timeZone);
+        }
+    }
+
+    /**
+     * The labels of the days from today on, good from validFrom until validUntil.
+     */
+    private static final class Labels {
+        final Patterns patterns;
+        final long offset;
+        final long today;
+        final long validFrom;
+        final long validUntil;
+        final String[] dayNames = new String[HORIZON_DAYS];
+        final String[] friendly = new String[HORIZON_DAYS];
+        final String[] monthDays = new String[HORIZON_DAYS];
+        final String[] full = new String[HORIZON_DAYS];
+
+        Labels(Context context, Patterns patterns, long now, long offset) {
+            this.patterns = patterns;
+            this.offset = offset;
+            today = getDay(now, offset);
+            validFrom = today * DAY_IN_MILLIS - offset;
+            validUntil = Math.min(validFrom + DAY_IN_MILLIS, now + HOUR_IN_MILLIS);
+
+            synchronized (patterns) {
+                for (int i = 0; i < HORIZON_DAYS; i++) {
+                    // Noon, well inside the day whatever the offset of that day is
+                    long noon = validFrom + i * DAY_IN_MILLIS + DAY_IN_MILLIS / 2;
+                    if (i == 0) {
+                        dayNames[i] = context.getString(R.string.today);
+                    } else if (i == 1) {
+                        dayNames[i] = context.getString(R.string.tomorrow);
+                    } else {
+                        dayNames[i] = patterns.dayName.format(noon);
+                    }
+                    friendly[i] = i < NAMED_DAYS ? dayNames[i] : patterns.shortDate.format(noon);
+                    monthDays[i] = patterns.monthDay.format(noon);
+                    full[i] = context.getString(R.string.format_full_friendly_date,
+                            dayNames[i], monthDays[i]);
+                }
+            }
+        }
+
+        // The day's index into the labels, or -1 if it has none
+        int indexOf(long dateInMillis) {
+            long index = getDay(dateInMillis, offset) - today;
+            return index >= 0 && index < HORIZON_DAYS ? (int) index : -1;
+        }
+    }
+
+    private static volatile Labels sLabels;
+    // Kept apart from the labels, formatDate has no context to make them with
+    private static volatile Patterns sPatterns;
+
+    private FriendlyDates() {
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString
+     */
+    static String getFriendlyDayString(Context context, long dateInMillis,
+                                       boolean displayLongToday) {
+        Labels labels = getLabels(context);
+        int index = labels.indexOf(dateInMillis);
+        if (index == 0 && displayLongToday) {
+            return labels.full[0];
+        } else if (index != -1) {
+            return labels.friendly[index];
+        } else if (getDay(dateInMillis, labels.offset) < labels.today + NAMED_DAYS) {
+            // In the past
+            return format(labels.patterns, labels.patterns.dayName, dateInMillis);
+        }
+        return format(labels.patterns, labels.patterns.shortDate, dateInMillis);
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString
+     */
+    static String getFullFriendlyDayString(Context context, long dateInMillis) {
+        Labels labels = getLabels(context);
+        int index = labels.indexOf(dateInMillis);
+        if (index != -1) {
+            return labels.full[index];
+        }
+        return context.getString(R.string.format_full_friendly_date,
+                getDayName(context, dateInMillis), getFormattedMonthDay(context, dateInMillis));
+    }
+
+    /**
+     * @see Utility#getDayName
+     */
+    static String getDayName(Context context, long dateInMillis) {
+        Labels labels = getLabels(context);
+        int index = labels.indexOf(dateInMillis);
+        if (index != -1) {
+            return labels.dayNames[index];
+        }
+        return format(labels.patterns, labels.patterns.dayName, dateInMillis);
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay
+     */
+    static String getFormattedMonthDay(Context context, long dateInMillis) {
+        Labels labels = getLabels(context);
+        int index = labels.indexOf(dateInMillis);
+        if (index != -1) {
+            return labels.monthDays[index];
+        }
+        return format(labels.patterns, labels.patterns.monthDay, dateInMillis);
+    }
+
+    /**
+     * @see Utility#formatDate
+     */
+    static String formatDate(long dateInMillis) {
+        Patterns patterns = getPatterns(Locale.getDefault(), TimeZone.getDefault());
+        return format(patterns, patterns.date, dateInMillis);
+    }
+
+    private static String format(Patterns patterns, DateFormat format, long dateInMillis) {
+        synchronized (patterns) {
+            return format.format(dateInMillis);
+        }
+    }
+
+    private static Labels getLabels(Context context) {
+        long now = System.currentTimeMillis();
+        Locale locale = Locale.getDefault();
+        Labels labels = sLabels;
+        if (labels != null && now >= labels.validFrom && now < labels.validUntil
+                && labels.patterns.locale.equals(locale)) {
+            return labels;
+        }
+
+        TimeZone timeZone = TimeZone.getDefault();
+        labels = new Labels(context, getPatterns(locale, timeZone), now,
+                timeZone.getOffset(now));
+        sLabels = labels;
+        return labels;
+    }
+
+    // The patterns of the locale and time zone, kept until either changes
+    private static Patterns getPatterns(Locale locale, TimeZone timeZone) {
+        Patterns patterns = sPatterns;
+        if (patterns == null || !patterns.locale.equals(locale)
+                || !patterns.timeZoneId.equals(timeZone.getID())) {
+            patterns = new Patterns(locale, timeZone);
+            sPatterns = patterns;
+        }
+        return patterns;
+    }
+
+    // Days since the epoch, counted with the offset
+    private static long getDay(long dateInMillis, long offset) {
+        long local = dateInMillis + offset;
+        long day = local / DAY_IN_MILLIS;
+        return local < 0 && local % DAY_IN_MILLIS != 0 ? day - 1 : day;
+    }
+}
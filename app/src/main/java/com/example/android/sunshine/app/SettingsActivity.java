@@ -23,7 +23,6 @@ import android.os.Bundle;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
-import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
@@ -50,21 +49,33 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
+
+        final Preference clearSavedLocations =
+                findPreference(getString(R.string.pref_clear_saved_locations_key));
+        // Only the preferred location means there's nothing to forget
+        clearSavedLocations.setEnabled(Utility.getSavedLocations(this).size() > 1);
+        clearSavedLocations.setOnPreferenceClickListener(
+                new Preference.OnPreferenceClickListener() {
+                    @Override
+                    public boolean onPreferenceClick(Preference preference) {
+                        Utility.clearSavedLocations(SettingsActivity.this);
+                        clearSavedLocations.setEnabled(false);
+                        return true;
+                    }
+                });
     }
 
     // Registers a shared preference change listener that gets notified when preferences change
     @Override
     protected void onResume() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
-        sp.registerOnSharedPreferenceChangeListener(this);
+        SettingsSnapshot.registerListener(this, this);
         super.onResume();
     }
 
     // Unregisters a shared preference change listener
     @Override
     protected void onPause() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
-        sp.unregisterOnSharedPreferenceChangeListener(this);
+        SettingsSnapshot.unregisterListener(this);
         super.onPause();
     }
 
@@ -78,10 +89,21 @@ public class SettingsActivity extends PreferenceActivity
         preference.setOnPreferenceChangeListener(this);
 
         // Set the preference summaries
-        setPreferenceSummary(preference,
-                PreferenceManager
-                        .getDefaultSharedPreferences(preference.getContext())
-                        .getString(preference.getKey(), ""));
+        setPreferenceSummary(preference, getSettingValue(preference.getKey()));
+    }
+
+    // The value of one of the preferences the summaries are bound to, from the settings snapshot
+    private String getSettingValue(String key) {
+        SettingsSnapshot settings = SettingsSnapshot.get(this);
+        if (key.equals(getString(R.string.pref_location_key))) {
+            return settings.locationSetting;
+        } else if (key.equals(getString(R.string.pref_units_key))) {
+            return getString(settings.metric
+                    ? R.string.pref_units_metric : R.string.pref_units_imperial);
+        } else if (key.equals(getString(R.string.pref_art_pack_key))) {
+            return settings.artPack;
+        }
+        return "";
     }
 
     private void setPreferenceSummary(Preference preference, Object value) {
@@ -123,6 +145,12 @@ public class SettingsActivity extends PreferenceActivity
     // This gets called before the preference is changed
     @Override
     public boolean onPreferenceChange(Preference preference, Object value) {
+        if (preference.getKey().equals(getString(R.string.pref_location_key))
+                && Utility.getLocationStatus(this) == SunshineSyncAdapter.LOCATION_STATUS_OK) {
+            // Keep syncing the location we're moving away from, so switching back is instant,
+            // but only if it ever synced, a typo isn't worth a request every sync
+            Utility.addSavedLocation(this, Utility.getPreferredLocation(this));
+        }
         setPreferenceSummary(preference, value);
         return true;
     }
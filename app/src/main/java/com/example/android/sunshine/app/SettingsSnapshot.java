@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The settings the app shows the weather with, read from the default shared preferences once
+ * and kept until one of the preferences changes, so the helpers in {@link Utility} don't look
+ * up a key and a preference for every row they format.  Read it through {@link #get}.
+ *
+ * A listener drops the snapshot whenever a preference changes, but preference listeners are
+ * called on the main thread, after a write from another thread and in no particular order
+ * among themselves.  So code that writes the settings itself does it through {@link #commit},
+ * and code that acts on a change listens through {@link #registerListener}, which only calls it
+ * after the snapshot is dropped.
+ */
+public final class SettingsSnapshot {
+    public final String locationSetting;
+    public final boolean metric;
+    // The url format of the art pack, with a %s for the name of the art
+    public final String artPack;
+    public final boolean localGraphics;
+    public final @SunshineSyncAdapter.LocationStatus int locationStatus;
+
+    private static final Object sLock = new Object();
+    private static volatile SettingsSnapshot sSnapshot;
+    // Counts the invalidations, so a snapshot read before a write is never kept
+    private static int sGeneration;
+    // The preferences only keep a weak reference to their listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+    private static final List<SharedPreferences.OnSharedPreferenceChangeListener> sListeners =
+            new CopyOnWriteArrayList<>();
+
+    private SettingsSnapshot(String locationSetting, boolean metric, String artPack,
+                             boolean localGraphics,
+                             @SunshineSyncAdapter.LocationStatus int locationStatus) {
+        this.locationSetting = locationSetting;
+        this.metric = metric;
+        this.artPack = artPack;
+        this.localGraphics = localGraphics;
+        this.locationStatus = locationStatus;
+    }
+
+    /**
+     * @return the current settings, read from the preferences only if they changed since the
+     * last call.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        int generation;
+        synchronized (sLock) {
+            listen(context);
+            generation = sGeneration;
+        }
+
+        snapshot = load(context);
+        synchronized (sLock) {
+            if (generation == sGeneration) {
+                sSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the snapshot, the next {@link #get} reads the preferences again.
+     */
+    public static void invalidate() {
+        synchronized (sLock) {
+            sSnapshot = null;
+            sGeneration++;
+        }
+    }
+
+    /**
+     * Commits the edits to the preferences and drops the snapshot, so the next {@link #get} on
+     * any thread sees them.
+     *
+     * @return whether the edits were written
+     */
+    public static boolean commit(SharedPreferences.Editor editor) {
+        boolean written = editor.commit();
+        invalidate();
+        return written;
+    }
+
+    /**
+     * Calls the listener for every change of the default shared preferences, after the snapshot
+     * is dropped, so it reads the settings as changed.
+     */
+    public static void registerListener(Context context,
+                                        SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        synchronized (sLock) {
+            listen(context);
+        }
+        sListeners.add(listener);
+    }
+
+    public static void unregisterListener(
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        sListeners.remove(listener);
+    }
+
+    // Called with sLock held
+    private static void listen(Context context) {
+        if (sListener == null) {
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    invalidate();
+                    for (SharedPreferences.OnSharedPreferenceChangeListener listener : sListeners) {
+                        listener.onSharedPreferenceChanged(prefs, key);
+                    }
+                }
+            };
+            PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext())
+                    .registerOnSharedPreferenceChangeListener(sListener);
+        }
+    }
+
+    @SuppressWarnings("ResourceType")
+    private static SettingsSnapshot load(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        String artPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        return new SettingsSnapshot(
+                prefs.getString(context.getString(R.string.pref_location_key),
+                        context.getString(R.string.pref_location_default)),
+                prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                        .equals(metricUnits),
+                artPack,
+                artPack.equals(sunshineArtPack),
+                prefs.getInt(context.getString(R.string.pref_location_status_key),
+                        SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN));
+    }
+}
@@ -26,21 +26,109 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 public class Utility {
     public static String getPreferredLocation(Context context) {
+        return SettingsSnapshot.get(context).locationSetting;
+    }
+
+    // The most locations a single sync will fetch, including the preferred one.
+    public static final int MAX_SAVED_LOCATIONS = 10;
+
+    /**
+     * Returns every location the sync adapter keeps a forecast for: the preferred location
+     * first, followed by the most recently used other locations.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return the location settings, never empty
+     */
+    public static List<String> getSavedLocations(Context context) {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_location_key),
-                context.getString(R.string.pref_location_default));
+        String preferredLocation = getPreferredLocation(context);
+        String saved = prefs.getString(context.getString(R.string.pref_saved_locations_key), "");
+
+        List<String> locations = new ArrayList<>();
+        locations.add(preferredLocation);
+        for (String location : saved.split("\n")) {
+            if (locations.size() == MAX_SAVED_LOCATIONS) {
+                break;
+            }
+            if (location.length() > 0 && !locations.contains(location)) {
+                locations.add(location);
+            }
+        }
+        return locations;
     }
 
-    public static boolean isMetric(Context context) {
+    /**
+     * Remembers a location so that the sync adapter keeps its forecast up to date, making it
+     * the most recently used one.  The oldest locations are forgotten once there are more than
+     * {@link #MAX_SAVED_LOCATIONS}.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param locationSetting the location to remember
+     */
+    public static void addSavedLocation(Context context, String locationSetting) {
+        locationSetting = locationSetting.trim();
+        if (locationSetting.length() == 0) {
+            return;
+        }
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_units_key),
-                context.getString(R.string.pref_units_metric))
-                .equals(context.getString(R.string.pref_units_metric));
+        String key = context.getString(R.string.pref_saved_locations_key);
+
+        StringBuilder saved = new StringBuilder(locationSetting);
+        int count = 1;
+        for (String location : prefs.getString(key, "").split("\n")) {
+            if (count == MAX_SAVED_LOCATIONS) {
+                break;
+            }
+            if (location.length() > 0 && !location.equals(locationSetting)) {
+                saved.append('\n').append(location);
+                count++;
+            }
+        }
+        prefs.edit().putString(key, saved.toString()).apply();
+    }
+
+    /**
+     * Forgets a location, so that the sync adapter stops keeping its forecast.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param locationSetting the location to forget
+     */
+    public static void removeSavedLocation(Context context, String locationSetting) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_saved_locations_key);
+
+        StringBuilder saved = new StringBuilder();
+        for (String location : prefs.getString(key, "").split("\n")) {
+            if (location.length() > 0 && !location.equals(locationSetting)) {
+                if (saved.length() > 0) {
+                    saved.append('\n');
+                }
+                saved.append(location);
+            }
+        }
+        prefs.edit().putString(key, saved.toString()).apply();
+    }
+
+    /**
+     * Forgets every location but the preferred one.
+     *
+     * @param context Context used to get the SharedPreferences
+     */
+    public static void clearSavedLocations(Context context) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .remove(context.getString(R.string.pref_saved_locations_key))
+                .apply();
+    }
+
+    public static boolean isMetric(Context context) {
+        return SettingsSnapshot.get(context).metric;
     }
 
     public static String formatTemperature(Context context, double temperature) {
@@ -56,6 +144,11 @@ public class Utility {
     }
 
     static String formatDate(long dateInMilliseconds) {
+        return FriendlyDates.formatDate(dateInMilliseconds);
+    }
+
+    // What FriendlyDates formats, kept to check it against
+    static String computeFormatDate(long dateInMilliseconds) {
         Date date = new Date(dateInMilliseconds);
         return DateFormat.getDateInstance().format(date);
     }
@@ -73,6 +166,10 @@ public class Utility {
      * @return a user-friendly representation of the date.
      */
     public static String getFriendlyDayString(Context context, long dateInMillis, boolean displayLongToday) {
+        return FriendlyDates.getFriendlyDayString(context, dateInMillis, displayLongToday);
+    }
+
+    static String computeFriendlyDayString(Context context, long dateInMillis, boolean displayLongToday) {
         // The day string for forecast uses the following logic:
         // For today: "Today, June 8"
         // For tomorrow:  "Tomorrow"
@@ -93,10 +190,10 @@ public class Utility {
             return String.format(context.getString(
                     formatId,
                     today,
-                    getFormattedMonthDay(context, dateInMillis)));
+                    computeFormattedMonthDay(context, dateInMillis)));
         } else if ( julianDay < currentJulianDay + 7 ) {
             // If the input date is less than a week in the future, just return the day name.
-            return getDayName(context, dateInMillis);
+            return computeDayName(context, dateInMillis);
         } else {
             // Otherwise, use the form "Mon Jun 3"
             SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
@@ -113,13 +210,17 @@ public class Utility {
      * @return a user-friendly representation of the date.
      */
     public static String getFullFriendlyDayString(Context context, long dateInMillis) {
+        return FriendlyDates.getFullFriendlyDayString(context, dateInMillis);
+    }
 
-        String day = getDayName(context, dateInMillis);
+    static String computeFullFriendlyDayString(Context context, long dateInMillis) {
+
+        String day = computeDayName(context, dateInMillis);
         int formatId = R.string.format_full_friendly_date;
         return String.format(context.getString(
                 formatId,
                 day,
-                getFormattedMonthDay(context, dateInMillis)));
+                computeFormattedMonthDay(context, dateInMillis)));
     }
 
     /**
@@ -131,6 +232,10 @@ public class Utility {
      * @return
      */
     public static String getDayName(Context context, long dateInMillis) {
+        return FriendlyDates.getDayName(context, dateInMillis);
+    }
+
+    static String computeDayName(Context context, long dateInMillis) {
         // If the date is today, return the localized version of "Today" instead of the actual
         // day name.
 
@@ -159,6 +264,10 @@ public class Utility {
      * @return The day in the form of a string formatted "December 6"
      */
     public static String getFormattedMonthDay(Context context, long dateInMillis ) {
+        return FriendlyDates.getFormattedMonthDay(context, dateInMillis);
+    }
+
+    static String computeFormattedMonthDay(Context context, long dateInMillis ) {
         Time time = new Time();
         time.setToNow();
         SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
@@ -207,6 +316,11 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getIconResourceForWeatherCondition(int weatherId) {
+        return WeatherConditions.getIconResource(weatherId);
+    }
+
+    // What WeatherConditions keeps in its table, and looks up outside of it
+    static int computeIconResourceForWeatherCondition(int weatherId) {
         // Based on weather code data found at:
         // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
         if (weatherId >= 200 && weatherId <= 232) {
@@ -242,10 +356,7 @@ public class Utility {
      * @return true if Sunshine is using local graphics, false otherwise.
      */
     public static boolean usingLocalGraphics(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
-        return prefs.getString(context.getString(R.string.pref_art_pack_key),
-                sunshineArtPack).equals(sunshineArtPack);
+        return SettingsSnapshot.get(context).localGraphics;
     }
 
     /**
@@ -257,9 +368,11 @@ public class Utility {
      * @return url for the corresponding weather artwork. null if no relation is found.
      */
     public static String getArtUrlForWeatherCondition(Context context, int weatherId) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
-                context.getString(R.string.pref_art_pack_sunshine));
+        return WeatherConditions.getArtUrl(context, weatherId);
+    }
+
+    static String computeArtUrlForWeatherCondition(Context context, int weatherId) {
+        String formatArtUrl = SettingsSnapshot.get(context).artPack;
 
         // Based on weather code data found at:
         // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
@@ -296,6 +409,10 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId) {
+        return WeatherConditions.getArtResource(weatherId);
+    }
+
+    static int computeArtResourceForWeatherCondition(int weatherId) {
         // Based on weather code data found at:
         // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
         if (weatherId >= 200 && weatherId <= 232) {
@@ -332,6 +449,10 @@ public class Utility {
      * @return string for the weather condition. null if no relation is found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
+        return WeatherConditions.getString(context, weatherId);
+    }
+
+    static String computeStringForWeatherCondition(Context context, int weatherId) {
         // Based on weather code data found at:
         // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
         int stringId;
@@ -558,11 +679,9 @@ public class Utility {
      * @param c Context used to get the SharedPreferences
      * @return the location status integer type
      */
-    @SuppressWarnings("ResourceType")
     static public @SunshineSyncAdapter.LocationStatus
     int getLocationStatus(Context c){
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        return sp.getInt(c.getString(R.string.pref_location_status_key), SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+        return SettingsSnapshot.get(c).locationStatus;
     }
 
     /**
@@ -573,6 +692,6 @@ public class Utility {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
         SharedPreferences.Editor spe = sp.edit();
         spe.putInt(c.getString(R.string.pref_location_status_key), SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
-        spe.apply();
+        SettingsSnapshot.commit(spe);
     }
 }
\ No newline at end of file
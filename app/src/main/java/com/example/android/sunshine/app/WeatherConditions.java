@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * The icon, art, art url and description of every weather condition from 200 to 804, in arrays
+ * indexed by the condition id, so the forecast list, the widgets, the notification and Wear
+ * don't walk the if/else chains in {@link Utility} for every day they show.
+ *
+ * The resources are looked up once.  The descriptions are read as they are first asked for and
+ * kept for the locale they were read in, the art urls for the art pack they were made from.
+ * Conditions outside the table, the 9xx extremes among them, are looked up every time.
+ */
+final class WeatherConditions {
+    static final int FIRST_ID = 200;
+    static final int LAST_ID = 804;
+
+    private static final int[] sIconResources = new int[LAST_ID - FIRST_ID + 1];
+    private static final int[] sArtResources = new int[LAST_ID - FIRST_ID + 1];
+
+    static {
+        for (int i = 0; i < sIconResources.length; i++) {
+            sIconResources[i] = Utility.computeIconResourceForWeatherCondition(FIRST_ID + i);
+            sArtResources[i] = Utility.computeArtResourceForWeatherCondition(FIRST_ID + i);
+        }
+    }
+
+    /**
+     * Strings of every condition in the table, filled in as they are asked for.  Two threads
+     * may both read the same one, they store the same string.
+     */
+    private static final class Strings {
+        // The locale or art pack the strings are for
+        final Object key;
+        final String[] values = new String[LAST_ID - FIRST_ID + 1];
+
+        Strings(Object key) {
+            this.key = key;
+        }
+    }
+
+    private static volatile Strings sDescriptions;
+    private static volatile Strings sArtUrls;
+
+    private WeatherConditions() {
+    }
+
+    static int getIconResource(int weatherId) {
+        if (weatherId < FIRST_ID || weatherId > LAST_ID) {
+            return Utility.computeIconResourceForWeatherCondition(weatherId);
+        }
+        return sIconResources[weatherId - FIRST_ID];
+    }
+
+    static int getArtResource(int weatherId) {
+        if (weatherId < FIRST_ID || weatherId > LAST_ID) {
+            return Utility.computeArtResourceForWeatherCondition(weatherId);
+        }
+        return sArtResources[weatherId - FIRST_ID];
+    }
+
+    static String getString(Context context, int weatherId) {
+        if (weatherId < FIRST_ID || weatherId > LAST_ID) {
+            return Utility.computeStringForWeatherCondition(context, weatherId);
+        }
+        Locale locale = context.getResources().getConfiguration().locale;
+        Strings descriptions = sDescriptions;
+        if (descriptions == null || !descriptions.key.equals(locale)) {
+            descriptions = new Strings(locale);
+            sDescriptions = descriptions;
+        }
+        String description = descriptions.values[weatherId - FIRST_ID];
+        if (description == null) {
+            description = Utility.computeStringForWeatherCondition(context, weatherId);
+            descriptions.values[weatherId - FIRST_ID] = description;
+        }
+        return description;
+    }
+
+    static String getArtUrl(Context context, int weatherId) {
+        if (weatherId < FIRST_ID || weatherId > LAST_ID) {
+            return Utility.computeArtUrlForWeatherCondition(context, weatherId);
+        }
+        String artPack = SettingsSnapshot.get(context).artPack;
+        Strings artUrls = sArtUrls;
+        if (artUrls == null || !artUrls.key.equals(artPack)) {
+            artUrls = new Strings(artPack);
+            sArtUrls = artUrls;
+        }
+        int index = weatherId - FIRST_ID;
+        String artUrl = artUrls.values[index];
+        // A condition without an icon has no art either, its url stays null
+        if (artUrl == null && sIconResources[index] != -1) {
+            artUrl = Utility.computeArtUrlForWeatherCondition(context, weatherId);
+            artUrls.values[index] = artUrl;
+        }
+        return artUrl;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+/**
+ * A read-only cursor over a {@link ForecastSnapshot}, for the few fixed projections of the
+ * forecast list and the detail widget.  Reading it is an array lookup per column, there is no
+ * CursorWindow to fill or copy.
+ */
+class ForecastArrayCursor extends AbstractCursor {
+
+    private final ForecastSnapshot mSnapshot;
+    private final String[] mColumnNames;
+    // The snapshot column of every column of the projection
+    private final int[] mColumns;
+
+    /**
+     * @param columns what {@link #getColumns} returned for the projection
+     */
+    ForecastArrayCursor(ForecastSnapshot snapshot, String[] projection, int[] columns) {
+        mSnapshot = snapshot;
+        mColumns = columns;
+        mColumnNames = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            // Like SQLite, name "weather._id" just "_id"
+            mColumnNames[i] = projection[i].substring(projection[i].lastIndexOf('.') + 1);
+        }
+    }
+
+    /**
+     * @return the snapshot column of every column of the projection, or null if the snapshot
+     * doesn't have all of them.
+     */
+    static int[] getColumns(String[] projection) {
+        if (projection == null) {
+            return null;
+        }
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = indexOf(projection[i]);
+            if (columns[i] == -1) {
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    private static int indexOf(String name) {
+        for (int column = 0; column < ForecastSnapshot.SNAPSHOT_COLUMNS.length; column++) {
+            String snapshotColumn = ForecastSnapshot.SNAPSHOT_COLUMNS[column];
+            if (snapshotColumn.equals(name) || snapshotColumn.equals(
+                    WeatherContract.WeatherEntry.TABLE_NAME + "." + name)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getCount() {
+        return mSnapshot.size();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        int row = getPosition();
+        switch (mColumns[column]) {
+            case ForecastSnapshot.COLUMN_SHORT_DESC:
+                return mSnapshot.descriptions[row];
+            case ForecastSnapshot.COLUMN_LOCATION_SETTING:
+                return mSnapshot.locationSetting;
+            case ForecastSnapshot.COLUMN_ID:
+            case ForecastSnapshot.COLUMN_DATE:
+            case ForecastSnapshot.COLUMN_WEATHER_ID:
+                return Long.toString(getLong(column));
+            default:
+                return Double.toString(getDouble(column));
+        }
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        int row = getPosition();
+        switch (mColumns[column]) {
+            case ForecastSnapshot.COLUMN_ID:
+                return mSnapshot.ids[row];
+            case ForecastSnapshot.COLUMN_DATE:
+                return mSnapshot.dates[row];
+            case ForecastSnapshot.COLUMN_WEATHER_ID:
+                return mSnapshot.weatherIds[row];
+            default:
+                return (long) getDouble(column);
+        }
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        int row = getPosition();
+        switch (mColumns[column]) {
+            case ForecastSnapshot.COLUMN_MAX_TEMP:
+                return mSnapshot.highs[row];
+            case ForecastSnapshot.COLUMN_MIN_TEMP:
+                return mSnapshot.lows[row];
+            case ForecastSnapshot.COLUMN_COORD_LAT:
+                return mSnapshot.coordLat;
+            case ForecastSnapshot.COLUMN_COORD_LONG:
+                return mSnapshot.coordLong;
+            case ForecastSnapshot.COLUMN_SHORT_DESC:
+            case ForecastSnapshot.COLUMN_LOCATION_SETTING:
+                // Like SQLite, text that isn't a number reads as 0
+                try {
+                    return Double.parseDouble(getString(column));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            default:
+                return getLong(column);
+        }
+    }
+
+    @Override
+    public int getType(int column) {
+        switch (mColumns[column]) {
+            case ForecastSnapshot.COLUMN_SHORT_DESC:
+            case ForecastSnapshot.COLUMN_LOCATION_SETTING:
+                return Cursor.FIELD_TYPE_STRING;
+            case ForecastSnapshot.COLUMN_ID:
+            case ForecastSnapshot.COLUMN_DATE:
+            case ForecastSnapshot.COLUMN_WEATHER_ID:
+                return Cursor.FIELD_TYPE_INTEGER;
+            default:
+                return Cursor.FIELD_TYPE_FLOAT;
+        }
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        // Every column of the snapshot is NOT NULL in the database
+        return false;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+
+import java.util.Arrays;
+
+/**
+ * The days of one location's forecast, kept column by column in primitive arrays rather than
+ * as a ContentValues map per day, so parsing and comparing a forecast doesn't box every number.
+ * Only the days that actually have to be written are turned into ContentValues, by
+ * {@link #toContentValues}.
+ *
+ * Days are expected in ascending date order, the order the server sends them and the provider
+ * returns them in.
+ */
+public final class ForecastBatch {
+    // Two weeks, the most the app asks for
+    private static final int DEFAULT_CAPACITY = 14;
+
+    private int mSize;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private String[] mDescriptions;
+    private double[] mMaxTemps;
+    private double[] mMinTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public ForecastBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ForecastBatch(int capacity) {
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mDescriptions = new String[capacity];
+        mMaxTemps = new double[capacity];
+        mMinTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    /**
+     * Appends a day, which must come after the days already in the batch.
+     */
+    public void add(long date, int weatherId, String description, double maxTemp, double minTemp,
+                    double humidity, double pressure, double windSpeed, double degrees) {
+        if (mSize == mDates.length) {
+            grow();
+        }
+        mDates[mSize] = date;
+        mWeatherIds[mSize] = weatherId;
+        mDescriptions[mSize] = description;
+        mMaxTemps[mSize] = maxTemp;
+        mMinTemps[mSize] = minTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, mDates.length * 2);
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mDescriptions = Arrays.copyOf(mDescriptions, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    public void clear() {
+        // Let go of the descriptions, the numbers are simply overwritten
+        Arrays.fill(mDescriptions, 0, mSize, null);
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public String getDescription(int i) {
+        return mDescriptions[i];
+    }
+
+    public double getMaxTemp(int i) {
+        return mMaxTemps[i];
+    }
+
+    public double getMinTemp(int i) {
+        return mMinTemps[i];
+    }
+
+    public double getHumidity(int i) {
+        return mHumidities[i];
+    }
+
+    public double getPressure(int i) {
+        return mPressures[i];
+    }
+
+    public double getWindSpeed(int i) {
+        return mWindSpeeds[i];
+    }
+
+    public double getDegrees(int i) {
+        return mDegrees[i];
+    }
+
+    /**
+     * @return the index of the day with the date, or a negative number if there is none.
+     */
+    public int indexOfDate(long date) {
+        return Arrays.binarySearch(mDates, 0, mSize, date);
+    }
+
+    /**
+     * @return true if day i of this batch has the same values as day j of the other one.
+     */
+    public boolean sameDay(int i, ForecastBatch other, int j) {
+        return mDates[i] == other.mDates[j]
+                && mWeatherIds[i] == other.mWeatherIds[j]
+                && mMaxTemps[i] == other.mMaxTemps[j]
+                && mMinTemps[i] == other.mMinTemps[j]
+                && mHumidities[i] == other.mHumidities[j]
+                && mPressures[i] == other.mPressures[j]
+                && mWindSpeeds[i] == other.mWindSpeeds[j]
+                && mDegrees[i] == other.mDegrees[j]
+                && (mDescriptions[i] == null
+                        ? other.mDescriptions[j] == null
+                        : mDescriptions[i].equals(other.mDescriptions[j]));
+    }
+
+    /**
+     * @return the weather row of day i, without a location key.
+     */
+    public ContentValues toContentValues(int i) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.WeatherEntry.COLUMN_DATE, mDates[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, mDescriptions[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, mHumidities[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, mPressures[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, mDegrees[i]);
+        return values;
+    }
+}
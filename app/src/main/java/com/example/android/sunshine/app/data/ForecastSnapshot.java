@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+/**
+ * The forecast list of a location from a start date on, read once into arrays.  The forecast
+ * list and the detail widget read it through a {@link ForecastArrayCursor} instead of a
+ * SQLiteCursor, see {@link WeatherContract.WeatherEntry#buildWeatherLocationSnapshot}.
+ */
+final class ForecastSnapshot {
+    static final String[] SNAPSHOT_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // these indices must match the projection
+    static final int COLUMN_ID = 0;
+    static final int COLUMN_DATE = 1;
+    static final int COLUMN_SHORT_DESC = 2;
+    static final int COLUMN_MAX_TEMP = 3;
+    static final int COLUMN_MIN_TEMP = 4;
+    static final int COLUMN_LOCATION_SETTING = 5;
+    static final int COLUMN_WEATHER_ID = 6;
+    static final int COLUMN_COORD_LAT = 7;
+    static final int COLUMN_COORD_LONG = 8;
+
+    private static final String SORT_BY_DATE = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    final String locationSetting;
+    final long startDate;
+    final long[] ids;
+    final long[] dates;
+    final String[] descriptions;
+    final double[] highs;
+    final double[] lows;
+    final int[] weatherIds;
+    final double coordLat;
+    final double coordLong;
+
+    private ForecastSnapshot(String locationSetting, long startDate, int count,
+                             double coordLat, double coordLong) {
+        this.locationSetting = locationSetting;
+        this.startDate = startDate;
+        this.ids = new long[count];
+        this.dates = new long[count];
+        this.descriptions = new String[count];
+        this.highs = new double[count];
+        this.lows = new double[count];
+        this.weatherIds = new int[count];
+        this.coordLat = coordLat;
+        this.coordLong = coordLong;
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * Reads the forecast list straight from the database, the provider calls this for the
+     * snapshot cache.
+     *
+     * @param startDate the normalized first day, or 0 for every stored day
+     */
+    static ForecastSnapshot load(SQLiteDatabase db, LocationIdCache locationIds,
+                                 String locationSetting, long startDate) {
+        Uri uri = startDate == 0
+                ? WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting)
+                : WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, startDate);
+        WeatherProvider.Query query = WeatherProvider.buildQuery(db, locationIds, uri,
+                SNAPSHOT_COLUMNS, null, null, SORT_BY_DATE);
+        Cursor cursor = db.rawQuery(query.sql, query.selectionArgs);
+        try {
+            double coordLat = 0;
+            double coordLong = 0;
+            if (cursor.moveToFirst()) {
+                coordLat = cursor.getDouble(COLUMN_COORD_LAT);
+                coordLong = cursor.getDouble(COLUMN_COORD_LONG);
+            }
+            ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting, startDate,
+                    cursor.getCount(), coordLat, coordLong);
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                snapshot.ids[i] = cursor.getLong(COLUMN_ID);
+                snapshot.dates[i] = cursor.getLong(COLUMN_DATE);
+                snapshot.descriptions[i] = cursor.getString(COLUMN_SHORT_DESC);
+                snapshot.highs[i] = cursor.getDouble(COLUMN_MAX_TEMP);
+                snapshot.lows[i] = cursor.getDouble(COLUMN_MIN_TEMP);
+                snapshot.weatherIds[i] = cursor.getInt(COLUMN_WEATHER_ID);
+            }
+            return snapshot;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Keeps today's weather for the preferred location in memory for the whole process.
+ *
+ * The widgets, Muzei, the notification and Wear all show the same row, usually right after a
+ * sync wrote it.  The first of them to ask reads it from the provider and the others get the
+ * same immutable snapshot without touching SQLite.  The provider drops the snapshot whenever a
+ * write to the weather or location tables commits, and it is only good for the day it was
+ * read on.
+ *
+ * The forecast list of the preferred location is kept the same way, for the provider to answer
+ * snapshot queries from.
+ */
+public final class ForecastSnapshotCache {
+
+    private static final Object sLock = new Object();
+    private static TodaySnapshot sToday;
+    private static String sTodayLocation;
+    private static long sTodayLoadedDay;
+    private static ForecastSnapshot sForecast;
+    // Counts the invalidations, so a snapshot read before a write committed is never kept
+    private static int sGeneration;
+
+    private ForecastSnapshotCache() {
+    }
+
+    /**
+     * @return today's weather for the location, or null if nothing is stored from today on.
+     */
+    public static TodaySnapshot getToday(Context context, String locationSetting) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int generation;
+        synchronized (sLock) {
+            if (sToday != null && sTodayLoadedDay == today
+                    && locationSetting.equals(sTodayLocation)) {
+                return sToday;
+            }
+            generation = sGeneration;
+        }
+
+        TodaySnapshot snapshot = TodaySnapshot.load(context, locationSetting);
+        synchronized (sLock) {
+            if (generation == sGeneration) {
+                sToday = snapshot;
+                sTodayLocation = locationSetting;
+                sTodayLoadedDay = today;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the forecast list of the location from the start date on, read from the database
+     * if it isn't the one in memory.
+     */
+    static ForecastSnapshot getForecast(SQLiteDatabase db, LocationIdCache locationIds,
+                                        String locationSetting, long startDate) {
+        int generation;
+        synchronized (sLock) {
+            if (sForecast != null && sForecast.startDate == startDate
+                    && locationSetting.equals(sForecast.locationSetting)) {
+                return sForecast;
+            }
+            generation = sGeneration;
+        }
+
+        ForecastSnapshot snapshot = ForecastSnapshot.load(db, locationIds, locationSetting,
+                startDate);
+        synchronized (sLock) {
+            if (generation == sGeneration) {
+                sForecast = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Called by the provider once a write has committed.
+     */
+    static void invalidate() {
+        synchronized (sLock) {
+            sToday = null;
+            sForecast = null;
+            sGeneration++;
+        }
+    }
+}
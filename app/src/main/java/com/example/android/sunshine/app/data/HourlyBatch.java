@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+
+import java.util.Arrays;
+
+/**
+ * The 3-hourly slots of one location's forecast, already in the scaled integers of the
+ * {@link WeatherContract.HourlyEntry} table, column by column like {@link ForecastBatch}.
+ */
+public final class HourlyBatch {
+    // Five days of 3-hour slots, what the server sends
+    private static final int DEFAULT_CAPACITY = 40;
+
+    private int mSize;
+    private long[] mHours;
+    private int[] mWeatherIds;
+    private int[] mTemps;
+    private int[] mHumidities;
+    private int[] mPressures;
+    private int[] mWindSpeeds;
+    private int[] mDegrees;
+
+    public HourlyBatch() {
+        mHours = new long[DEFAULT_CAPACITY];
+        mWeatherIds = new int[DEFAULT_CAPACITY];
+        mTemps = new int[DEFAULT_CAPACITY];
+        mHumidities = new int[DEFAULT_CAPACITY];
+        mPressures = new int[DEFAULT_CAPACITY];
+        mWindSpeeds = new int[DEFAULT_CAPACITY];
+        mDegrees = new int[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Appends a slot as the server sent it, scaling its values for the table.
+     *
+     * @param time the start of the slot, in milliseconds
+     */
+    public void add(long time, int weatherId, double temp, double humidity, double pressure,
+                    double windSpeed, double degrees) {
+        if (mSize == mHours.length) {
+            grow();
+        }
+        mHours[mSize] = WeatherContract.HourlyEntry.toHour(time);
+        mWeatherIds[mSize] = weatherId;
+        mTemps[mSize] = WeatherContract.HourlyEntry.toScaled(temp);
+        mHumidities[mSize] = (int) Math.round(humidity);
+        mPressures[mSize] = WeatherContract.HourlyEntry.toScaled(pressure);
+        mWindSpeeds[mSize] = WeatherContract.HourlyEntry.toScaled(windSpeed);
+        mDegrees[mSize] = (int) Math.round(degrees);
+        mSize++;
+    }
+
+    private void grow() {
+        int capacity = mHours.length * 2;
+        mHours = Arrays.copyOf(mHours, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mTemps = Arrays.copyOf(mTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getHour(int i) {
+        return mHours[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public int getScaledTemp(int i) {
+        return mTemps[i];
+    }
+
+    /**
+     * @return the hourly row of slot i, without a location key.
+     */
+    public ContentValues toContentValues(int i) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.HourlyEntry.COLUMN_HOUR, mHours[i]);
+        values.put(WeatherContract.HourlyEntry.COLUMN_WEATHER_ID, mWeatherIds[i]);
+        values.put(WeatherContract.HourlyEntry.COLUMN_TEMP, mTemps[i]);
+        values.put(WeatherContract.HourlyEntry.COLUMN_HUMIDITY, mHumidities[i]);
+        values.put(WeatherContract.HourlyEntry.COLUMN_PRESSURE, mPressures[i]);
+        values.put(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED, mWindSpeeds[i]);
+        values.put(WeatherContract.HourlyEntry.COLUMN_DEGREES, mDegrees[i]);
+        return values;
+    }
+}
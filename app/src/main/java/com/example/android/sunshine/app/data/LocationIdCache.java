@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the row id of the location settings the provider has resolved, so weather queries
+ * can look up their rows by location_id instead of comparing location_setting strings.
+ *
+ * The provider writes every location, so it invalidates the cache whenever a write may have
+ * changed or removed one.  Locations that don't exist aren't remembered, they may be inserted
+ * from outside the provider's sight, e.g. by the tests.
+ */
+class LocationIdCache {
+
+    private static final String[] ID_PROJECTION = {WeatherContract.LocationEntry._ID};
+
+    private static final String sLocationSettingSelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    private final Map<String, Long> mIds = new HashMap<>();
+    // Counts the invalidations, so a lookup that raced one doesn't put back what it read
+    private int mGeneration;
+
+    /**
+     * @return the row id of the location, or -1 if it isn't stored.
+     */
+    long getLocationId(SQLiteDatabase db, String locationSetting) {
+        int generation;
+        synchronized (this) {
+            Long id = mIds.get(locationSetting);
+            if (id != null) {
+                return id;
+            }
+            generation = mGeneration;
+        }
+
+        long id = -1;
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME, ID_PROJECTION,
+                sLocationSettingSelection, new String[]{locationSetting}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                id = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (id != -1) {
+            synchronized (this) {
+                if (generation == mGeneration) {
+                    mIds.put(locationSetting, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Remembers a location the provider just inserted.  The caller invalidates the cache if the
+     * insert is rolled back.
+     */
+    synchronized void put(String locationSetting, long id) {
+        mIds.put(locationSetting, id);
+    }
+
+    synchronized void invalidate() {
+        mIds.clear();
+        mGeneration++;
+    }
+}
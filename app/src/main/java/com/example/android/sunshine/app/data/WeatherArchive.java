@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Copies the days that have passed from the weather table into the history, and keeps the
+ * weekly and monthly aggregates of the history up to date.
+ *
+ * The days stay in the weather table until a new day overwrites their slot, see
+ * {@link WeatherContract.WeatherEntry#getSlot}, so archiving never deletes rows from it one by
+ * one.  Only a location whose every day is archived, one that isn't synced any more, is
+ * truncated as a whole.  The history is kept for {@link #HISTORY_RETENTION_DAYS}, long enough
+ * to recompute any period that may still get days, and the aggregates for
+ * {@link #WEEK_RETENTION_DAYS} and {@link #MONTH_RETENTION_DAYS}, so none of the tables grows
+ * without bound.
+ */
+class WeatherArchive {
+
+    static final int HISTORY_RETENTION_DAYS = 92;
+    static final int WEEK_RETENTION_DAYS = 366;
+    static final int MONTH_RETENTION_DAYS = 5 * 366;
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    // The UTC day of a stored date.  Dates are local midnights, which are less than half a
+    // day away from the midnight UTC of the same day.
+    private static final String DAY = "((" + HistoryEntry.COLUMN_DATE + " + "
+            + DAY_IN_MILLIS / 2 + ") / " + DAY_IN_MILLIS + ")";
+    // Day 0 was a Thursday, weeks start on Monday
+    private static final String WEEK_START_DAY = "(" + DAY + " - (" + DAY + " + 3) % 7)";
+    private static final String MONTH_START_DAY = "(CAST(strftime('%s', " + DAY
+            + " * 86400, 'unixepoch', 'start of month') AS INTEGER) / 86400)";
+
+    //SELECT MIN(date), COUNT(*) FROM weather WHERE
+    static final String sCountNewDaysSql =
+            "SELECT MIN(" + WeatherEntry.COLUMN_DATE + "), COUNT(*) FROM " +
+                    WeatherEntry.TABLE_NAME + " WHERE ";
+
+    //INSERT INTO history (...) SELECT ... FROM weather WHERE
+    static final String sCopyToHistorySql =
+            "INSERT INTO " + HistoryEntry.TABLE_NAME + " (" +
+                    HistoryEntry.COLUMN_LOC_KEY + ", " +
+                    HistoryEntry.COLUMN_DATE + ", " +
+                    HistoryEntry.COLUMN_WEATHER_ID + ", " +
+                    HistoryEntry.COLUMN_MIN_TEMP + ", " +
+                    HistoryEntry.COLUMN_MAX_TEMP + ") SELECT " +
+                    WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    "CAST(ROUND(" + WeatherEntry.COLUMN_MIN_TEMP + " * " + HistoryEntry.SCALE +
+                    ") AS INTEGER), " +
+                    "CAST(ROUND(" + WeatherEntry.COLUMN_MAX_TEMP + " * " + HistoryEntry.SCALE +
+                    ") AS INTEGER) FROM " + WeatherEntry.TABLE_NAME + " WHERE ";
+
+    // The weather rows whose day isn't in the history yet
+    private static final String sNotArchivedSelection =
+            " AND NOT EXISTS (SELECT 1 FROM " + HistoryEntry.TABLE_NAME + " WHERE " +
+                    HistoryEntry.TABLE_NAME + "." + HistoryEntry.COLUMN_LOC_KEY + " = " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " AND " +
+                    HistoryEntry.TABLE_NAME + "." + HistoryEntry.COLUMN_DATE + " = " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + ")";
+
+    //DELETE FROM weather WHERE location_id IN (locations with days before ?) AND (every day of
+    //the location is in the history)
+    static final String sTruncateArchivedLocationsSql =
+            "DELETE FROM " + WeatherEntry.TABLE_NAME + " WHERE " + WeatherEntry.COLUMN_LOC_KEY +
+                    " IN (SELECT " + WeatherEntry.COLUMN_LOC_KEY + " FROM " +
+                    WeatherEntry.TABLE_NAME + " WHERE " + WeatherEntry.COLUMN_DATE + " < ?)" +
+                    " AND NOT EXISTS (SELECT 1 FROM " + WeatherEntry.TABLE_NAME + " AS kept" +
+                    " WHERE kept." + WeatherEntry.COLUMN_LOC_KEY + " = " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY +
+                    " AND NOT EXISTS (SELECT 1 FROM " + HistoryEntry.TABLE_NAME + " WHERE " +
+                    HistoryEntry.TABLE_NAME + "." + HistoryEntry.COLUMN_LOC_KEY + " = kept." +
+                    WeatherEntry.COLUMN_LOC_KEY + " AND " +
+                    HistoryEntry.TABLE_NAME + "." + HistoryEntry.COLUMN_DATE + " = kept." +
+                    WeatherEntry.COLUMN_DATE + "))";
+
+    private WeatherArchive() {
+    }
+
+    /**
+     * Copies the weather rows dated before today and matching the selection that aren't
+     * archived yet to the history and updates the aggregates of the periods they fall in, then
+     * drops the locations that have nothing left to show and what is past its retention.  Must
+     * be called inside a transaction.
+     *
+     * @return the number of days archived
+     */
+    static int archive(SQLiteDatabase db, String selection, String[] selectionArgs, long now) {
+        String newDays = buildNewDaysSelection(selection);
+        String[] newDaysArgs = buildNewDaysArgs(selectionArgs, now);
+        // The first of the days decides which periods have to be recomputed
+        Cursor cursor = db.rawQuery(sCountNewDaysSql + newDays, newDaysArgs);
+        long firstDate;
+        int dayCount;
+        try {
+            if (!cursor.moveToFirst() || cursor.getInt(1) == 0) {
+                return 0;
+            }
+            firstDate = cursor.getLong(0);
+            dayCount = cursor.getInt(1);
+        } finally {
+            cursor.close();
+        }
+
+        db.execSQL(sCopyToHistorySql + newDays, newDaysArgs);
+
+        // Each period is recomputed from its own first day, a period only partly read would
+        // replace its aggregate with the one of those days
+        long firstDay = toDay(firstDate);
+        aggregate(db, ArchiveEntry.PERIOD_WEEK, WEEK_START_DAY, weekStartDay(firstDay));
+        aggregate(db, ArchiveEntry.PERIOD_MONTH, MONTH_START_DAY, monthStartDay(firstDay));
+
+        db.execSQL(sTruncateArchivedLocationsSql, new String[]{newDaysArgs[0]});
+        compact(db, now);
+        return dayCount;
+    }
+
+    /**
+     * The weather rows dated before today that match the selection and whose day isn't in the
+     * history yet.  Only the days before today are looked up, in the index on the date, however
+     * wide the selection is.
+     */
+    static String buildNewDaysSelection(String selection) {
+        return WeatherEntry.COLUMN_DATE + " < ? AND (" + selection + ")" + sNotArchivedSelection;
+    }
+
+    /**
+     * The arguments of {@link #buildNewDaysSelection}: the start of today, then those of the
+     * selection.
+     */
+    static String[] buildNewDaysArgs(String[] selectionArgs, long now) {
+        int count = selectionArgs != null ? selectionArgs.length : 0;
+        String[] args = new String[count + 1];
+        args[0] = Long.toString(WeatherContract.normalizeDate(now));
+        if (count > 0) {
+            System.arraycopy(selectionArgs, 0, args, 1, count);
+        }
+        return args;
+    }
+
+    /**
+     * Recomputes the aggregates of every period that has days in the history from a day on,
+     * which must be the first day of a period.
+     */
+    private static void aggregate(SQLiteDatabase db, int period, String periodStartDay,
+                                  long fromDay) {
+        // One group per period and weather id, so the most frequent weather of a period is
+        // the first of its groups
+        Cursor cursor = db.rawQuery("SELECT " +
+                HistoryEntry.COLUMN_LOC_KEY + ", " +
+                periodStartDay + " AS start_day, " +
+                HistoryEntry.COLUMN_WEATHER_ID + ", " +
+                "COUNT(*) AS days, " +
+                "MIN(" + HistoryEntry.COLUMN_MIN_TEMP + "), " +
+                "MAX(" + HistoryEntry.COLUMN_MAX_TEMP + "), " +
+                "SUM(" + HistoryEntry.COLUMN_MIN_TEMP + " + " + HistoryEntry.COLUMN_MAX_TEMP + ")" +
+                " FROM " + HistoryEntry.TABLE_NAME +
+                " WHERE " + HistoryEntry.COLUMN_DATE + " >= ?" +
+                " GROUP BY " + HistoryEntry.COLUMN_LOC_KEY + ", start_day, " +
+                HistoryEntry.COLUMN_WEATHER_ID +
+                " ORDER BY " + HistoryEntry.COLUMN_LOC_KEY + ", start_day, days DESC, " +
+                HistoryEntry.COLUMN_WEATHER_ID,
+                new String[]{Long.toString(fromDay * DAY_IN_MILLIS - DAY_IN_MILLIS / 2)});
+        try {
+            ContentValues values = null;
+            long sum = 0;
+            while (cursor.moveToNext()) {
+                long locationId = cursor.getLong(0);
+                long startDay = cursor.getLong(1);
+                if (values == null
+                        || values.getAsLong(ArchiveEntry.COLUMN_LOC_KEY) != locationId
+                        || values.getAsLong(ArchiveEntry.COLUMN_PERIOD_START)
+                        != startDay * DAY_IN_MILLIS) {
+                    writeAggregate(db, values, sum);
+                    values = new ContentValues();
+                    values.put(ArchiveEntry.COLUMN_LOC_KEY, locationId);
+                    values.put(ArchiveEntry.COLUMN_PERIOD, period);
+                    values.put(ArchiveEntry.COLUMN_PERIOD_START, startDay * DAY_IN_MILLIS);
+                    values.put(ArchiveEntry.COLUMN_WEATHER_ID, cursor.getInt(2));
+                    values.put(ArchiveEntry.COLUMN_DAY_COUNT, 0);
+                    values.put(ArchiveEntry.COLUMN_MIN_TEMP, cursor.getInt(4));
+                    values.put(ArchiveEntry.COLUMN_MAX_TEMP, cursor.getInt(5));
+                    sum = 0;
+                }
+                values.put(ArchiveEntry.COLUMN_DAY_COUNT,
+                        values.getAsInteger(ArchiveEntry.COLUMN_DAY_COUNT) + cursor.getInt(3));
+                values.put(ArchiveEntry.COLUMN_MIN_TEMP,
+                        Math.min(values.getAsInteger(ArchiveEntry.COLUMN_MIN_TEMP), cursor.getInt(4)));
+                values.put(ArchiveEntry.COLUMN_MAX_TEMP,
+                        Math.max(values.getAsInteger(ArchiveEntry.COLUMN_MAX_TEMP), cursor.getInt(5)));
+                sum += cursor.getLong(6);
+            }
+            writeAggregate(db, values, sum);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void writeAggregate(SQLiteDatabase db, ContentValues values, long sum) {
+        if (values == null) {
+            return;
+        }
+        int days = values.getAsInteger(ArchiveEntry.COLUMN_DAY_COUNT);
+        // The mean of the daily (high + low) / 2
+        values.put(ArchiveEntry.COLUMN_MEAN_TEMP, (int) Math.round(sum / (2.0 * days)));
+        // The unique key replaces the aggregate the period had so far
+        db.insert(ArchiveEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Drops the history and the aggregates that are past their retention.
+     */
+    static void compact(SQLiteDatabase db, long now) {
+        long today = toDay(now);
+        db.delete(HistoryEntry.TABLE_NAME, HistoryEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString((today - HISTORY_RETENTION_DAYS) * DAY_IN_MILLIS)});
+        String periodSelection = ArchiveEntry.COLUMN_PERIOD + " = ? AND "
+                + ArchiveEntry.COLUMN_PERIOD_START + " < ?";
+        db.delete(ArchiveEntry.TABLE_NAME, periodSelection, new String[]{
+                Integer.toString(ArchiveEntry.PERIOD_WEEK),
+                Long.toString((today - WEEK_RETENTION_DAYS) * DAY_IN_MILLIS)});
+        db.delete(ArchiveEntry.TABLE_NAME, periodSelection, new String[]{
+                Integer.toString(ArchiveEntry.PERIOD_MONTH),
+                Long.toString((today - MONTH_RETENTION_DAYS) * DAY_IN_MILLIS)});
+    }
+
+    static long toDay(long date) {
+        return (date + DAY_IN_MILLIS / 2) / DAY_IN_MILLIS;
+    }
+
+    static long weekStartDay(long day) {
+        return day - (day + 3) % 7;
+    }
+
+    static long monthStartDay(long day) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(day * DAY_IN_MILLIS);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis() / DAY_IN_MILLIS;
+    }
+}
@@ -43,6 +43,11 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_HOURLY = "hourly";
+    public static final String PATH_ARCHIVE = "archive";
+
+    // Provider method that checkpoints the database log after a sync has written its forecasts
+    public static final String METHOD_CHECKPOINT = "checkpoint";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -99,6 +104,11 @@ public class WeatherContract {
 
         public static final String TABLE_NAME = "weather";
 
+        // Query parameter that asks for the in-memory forecast rather than the database
+        public static final String PARAM_SNAPSHOT = "snapshot";
+        // Query parameter that makes a delete move the days to the archive
+        public static final String PARAM_ARCHIVE = "archive";
+
         // Column with the foreign key into the location table.
         public static final String COLUMN_LOC_KEY = "location_id";
         // Date, stored as long in milliseconds since the epoch
@@ -126,6 +136,15 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // The slot of the location's ring the day is kept in, see getSlot
+        public static final String COLUMN_SLOT = "slot";
+
+        // The days a location keeps, more than the two weeks the sync asks for so the days that
+        // just passed are still there to be archived
+        public static final int SLOT_COUNT = 16;
+
+        private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -144,6 +163,16 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        /**
+         * Like {@link #buildWeatherLocationWithStartDate}, but the provider answers it from the
+         * forecast it keeps in memory, with a cursor that doesn't go through SQLite.  Only the
+         * columns the forecast list shows can be asked for, sorted by date.
+         */
+        public static Uri buildWeatherLocationSnapshot(String locationSetting, long startDate) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_SNAPSHOT, "1").build();
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
             return CONTENT_URI.buildUpon().appendPath(locationSetting)
                     .appendPath(Long.toString(normalizeDate(date))).build();
@@ -157,6 +186,38 @@ public class WeatherContract {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        /**
+         * A delete of this uri copies the days it selects to the history and the weekly and
+         * monthly aggregates of {@link ArchiveEntry}, and counts the days that weren't archived
+         * yet.  The days stay in the weather table until a new day takes their slot, or until
+         * every day of their location is archived.
+         */
+        public static Uri buildWeatherArchiveUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_ARCHIVE, "1").build();
+        }
+
+        /**
+         * Each location keeps its days in a ring of {@link #SLOT_COUNT} slots, one per day.  A
+         * new day overwrites the day that was SLOT_COUNT days before it, so the days that have
+         * passed never have to be looked for and deleted.
+         *
+         * @param date a normalized date
+         * @return the slot of the day
+         */
+        public static int getSlot(long date) {
+            // Normalized dates are local midnights, less than half a day from midnight UTC
+            long day = (date + DAY_IN_MILLIS / 2) / DAY_IN_MILLIS;
+            return (int) (day % SLOT_COUNT);
+        }
+
+        public static boolean isArchiveUri(Uri uri) {
+            return uri.getQueryParameter(PARAM_ARCHIVE) != null;
+        }
+
+        public static boolean isSnapshotUri(Uri uri) {
+            return uri.getQueryParameter(PARAM_SNAPSHOT) != null;
+        }
+
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
@@ -165,4 +226,167 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /*
+        Inner class that defines the table contents of the 3-hourly forecast table.  The rows
+        are kept small, there are 8 of them a day for every location: times are whole hours
+        since the epoch rather than milliseconds, and measurements are integers in units of
+        1/SCALE rather than floats, which SQLite stores in one to three bytes each.
+     */
+    public static final class HourlyEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HOURLY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+
+        public static final String TABLE_NAME = "hourly";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Start of the slot, in whole hours since the epoch, see toHour and toMillis
+        public static final String COLUMN_HOUR = "hour";
+        // Weather id as returned by API, to identify the icon to be used
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        // Temperature in 1/SCALE degrees
+        public static final String COLUMN_TEMP = "temp";
+        // Humidity in whole percent
+        public static final String COLUMN_HUMIDITY = "humidity";
+        // Pressure in 1/SCALE hPa
+        public static final String COLUMN_PRESSURE = "pressure";
+        // Windspeed in 1/SCALE of the unit the API sent
+        public static final String COLUMN_WIND_SPEED = "wind";
+        // Meteorological degrees, rounded
+        public static final String COLUMN_DEGREES = "degrees";
+
+        // The scaled columns hold their value times this
+        public static final int SCALE = 10;
+
+        // Query parameters that bound the start of the slots, in milliseconds, the end excluded
+        public static final String PARAM_START = "start";
+        public static final String PARAM_END = "end";
+
+        private static final long HOUR_IN_MILLIS = 60 * 60 * 1000;
+
+        public static Uri buildHourlyLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildHourlyLocationWithRange(String locationSetting, long startTime,
+                                                       long endTime) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_START, Long.toString(startTime))
+                    .appendQueryParameter(PARAM_END, Long.toString(endTime)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        /**
+         * @return the first hour a slot of the uri's range may start at, or 0 if it has no start
+         */
+        public static long getStartHourFromUri(Uri uri) {
+            String start = uri.getQueryParameter(PARAM_START);
+            return start != null ? toHourCeiling(Long.parseLong(start)) : 0;
+        }
+
+        /**
+         * @return the first hour after the uri's range, or Long.MAX_VALUE if it has no end
+         */
+        public static long getEndHourFromUri(Uri uri) {
+            String end = uri.getQueryParameter(PARAM_END);
+            return end != null ? toHourCeiling(Long.parseLong(end)) : Long.MAX_VALUE;
+        }
+
+        private static long toHourCeiling(long timeInMillis) {
+            return (timeInMillis + HOUR_IN_MILLIS - 1) / HOUR_IN_MILLIS;
+        }
+
+        public static long toHour(long timeInMillis) {
+            return timeInMillis / HOUR_IN_MILLIS;
+        }
+
+        public static long toMillis(long hour) {
+            return hour * HOUR_IN_MILLIS;
+        }
+
+        public static int toScaled(double value) {
+            return (int) Math.round(value * SCALE);
+        }
+
+        public static double fromScaled(int scaled) {
+            return (double) scaled / SCALE;
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the daily history, the days that have
+        passed.  Only what the trends need is kept, temperatures in 1/SCALE degrees.
+     */
+    public static final class HistoryEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "history";
+
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Date, as it was stored in the weather table
+        public static final String COLUMN_DATE = "date";
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+
+        public static final int SCALE = HourlyEntry.SCALE;
+    }
+
+    /* Inner class that defines the table contents of the weekly and monthly aggregates */
+    public static final class ArchiveEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ARCHIVE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ARCHIVE;
+
+        public static final String TABLE_NAME = "archive";
+
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // PERIOD_WEEK or PERIOD_MONTH
+        public static final String COLUMN_PERIOD = "period";
+        // First day of the period, midnight UTC in milliseconds.  Weeks start on Monday.
+        public static final String COLUMN_PERIOD_START = "period_start";
+        // Lowest low, highest high and mean of the daily (high + low) / 2, in 1/SCALE degrees
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        public static final String COLUMN_MEAN_TEMP = "mean";
+        // The weather id of the most days of the period
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        // How many days of the period the aggregates are over
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        public static final int PERIOD_WEEK = 1;
+        public static final int PERIOD_MONTH = 2;
+
+        public static final int SCALE = HourlyEntry.SCALE;
+
+        // Query parameter with the period to list
+        public static final String PARAM_PERIOD = "period";
+
+        public static Uri buildArchiveLocation(String locationSetting, int period) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_PERIOD, Integer.toString(period)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        /**
+         * @return the period of the uri, PERIOD_WEEK if it has none
+         */
+        public static int getPeriodFromUri(Uri uri) {
+            String period = uri.getQueryParameter(PARAM_PERIOD);
+            return period != null ? Integer.parseInt(period) : PERIOD_WEEK;
+        }
+    }
 }
@@ -15,25 +15,245 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.text.TextUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
  * Manages a local database for weather data.
+ *
+ * The database is written ahead, so the lists, widgets and Muzei can keep reading the last
+ * forecast from their own connections while a sync is writing the next one.  Android sizes the
+ * pool of read connections itself; all we need to do is share one helper per process, which the
+ * provider does.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
+
+    // If you change the database schema, you must increment the database version and add the
+    // migration from the previous version to MIGRATIONS.
+    static final int DATABASE_VERSION = 8;
+
+    // Databases older than this were created before we kept migrations, they start over
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
+
+    /**
+     * One step of the schema, from a version to the next.  A migration runs inside the upgrade
+     * transaction and must keep the rows that are already stored.
+     */
+    interface Migration {
+        void migrate(SQLiteDatabase db);
+    }
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // Location and date first for the lookups and the ordering, then the columns of the
+    // forecast list; _id comes with every index
+    private static final String[] LIST_INDEX_COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    // The columns of the weather table that every version has
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // MIGRATIONS[i] upgrades a database from version OLDEST_MIGRATABLE_VERSION + i to the next
+    private static final Migration[] MIGRATIONS = {
+            // 2 -> 3: the forecast of a location is looked up and ordered by date.  Version 3
+            // shipped with this index, so this step must keep making it.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE INDEX weather_location_date ON " + WeatherEntry.TABLE_NAME
+                            + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE
+                            + ")");
+                }
+            },
+            // 3 -> 4: the forecast list, widgets and Muzei read everything they need from the
+            // weather table out of the index, without touching the rows.  It leads with the
+            // same columns, so it replaces the index of version 3.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL("DROP INDEX weather_location_date");
+                    db.execSQL("CREATE INDEX weather_location_date_list ON "
+                            + WeatherEntry.TABLE_NAME + " (" + TextUtils.join(", ",
+                            LIST_INDEX_COLUMNS) + ")");
+                }
+            },
+            // 4 -> 5: the 3-hourly forecast, whose unique key on location and hour is also what
+            // time range queries scan
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+                            HourlyEntry._ID + " INTEGER PRIMARY KEY," +
+                            HourlyEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_HOUR + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_TEMP + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_HUMIDITY + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_PRESSURE + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_WIND_SPEED + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_DEGREES + " INTEGER NOT NULL, " +
+                            " FOREIGN KEY (" + HourlyEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                            // A newer forecast of a slot replaces the old one
+                            " UNIQUE (" + HourlyEntry.COLUMN_LOC_KEY + ", " +
+                            HourlyEntry.COLUMN_HOUR + ") ON CONFLICT REPLACE);");
+                }
+            },
+            // 5 -> 6: the days that have passed are kept in the history and its weekly and
+            // monthly aggregates instead of being deleted
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+                            HistoryEntry._ID + " INTEGER PRIMARY KEY," +
+                            HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                            HistoryEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                            HistoryEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                            HistoryEntry.COLUMN_MIN_TEMP + " INTEGER NOT NULL, " +
+                            HistoryEntry.COLUMN_MAX_TEMP + " INTEGER NOT NULL, " +
+                            " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                            " UNIQUE (" + HistoryEntry.COLUMN_LOC_KEY + ", " +
+                            HistoryEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);");
+                    db.execSQL("CREATE TABLE " + ArchiveEntry.TABLE_NAME + " (" +
+                            ArchiveEntry._ID + " INTEGER PRIMARY KEY," +
+                            ArchiveEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                            ArchiveEntry.COLUMN_PERIOD + " INTEGER NOT NULL, " +
+                            ArchiveEntry.COLUMN_PERIOD_START + " INTEGER NOT NULL, " +
+                            ArchiveEntry.COLUMN_MIN_TEMP + " INTEGER NOT NULL, " +
+                            ArchiveEntry.COLUMN_MAX_TEMP + " INTEGER NOT NULL, " +
+                            ArchiveEntry.COLUMN_MEAN_TEMP + " INTEGER NOT NULL, " +
+                            ArchiveEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                            ArchiveEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+                            " FOREIGN KEY (" + ArchiveEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                            // Recomputing a period replaces its aggregate
+                            " UNIQUE (" + ArchiveEntry.COLUMN_LOC_KEY + ", " +
+                            ArchiveEntry.COLUMN_PERIOD + ", " +
+                            ArchiveEntry.COLUMN_PERIOD_START + ") ON CONFLICT REPLACE);");
+                }
+            },
+            // 6 -> 7: every location keeps its days in a ring of slots, so a new day overwrites
+            // one that has passed instead of the sync deleting the days that have passed.  The
+            // unique key moves from the date to the slot, which means rebuilding the table.
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + WeatherEntry.TABLE_NAME + " RENAME TO "
+                            + WeatherEntry.TABLE_NAME + "_v6");
+                    db.execSQL("CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+                            WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                            WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                            WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                            WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+                            WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                            // The provider fills it in, rows written around it have none and
+                            // are never overwritten
+                            WeatherEntry.COLUMN_SLOT + " INTEGER, " +
+                            " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                            // One day per slot, which also makes it one row per day
+                            " UNIQUE (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                            WeatherEntry.COLUMN_SLOT + ") ON CONFLICT REPLACE);");
+                    // The slot of WeatherEntry.getSlot.  Oldest first, so where two stored days
+                    // share a slot the newer one stays.
+                    String columns = WeatherEntry._ID + ", " + TextUtils.join(", ",
+                            WEATHER_COLUMNS);
+                    db.execSQL("INSERT INTO " + WeatherEntry.TABLE_NAME + " (" + columns + ", "
+                            + WeatherEntry.COLUMN_SLOT + ") SELECT " + columns + ", (("
+                            + WeatherEntry.COLUMN_DATE + " + 43200000) / 86400000) % "
+                            + WeatherEntry.SLOT_COUNT + " FROM " + WeatherEntry.TABLE_NAME
+                            + "_v6 ORDER BY " + WeatherEntry.COLUMN_DATE);
+                    db.execSQL("DROP TABLE " + WeatherEntry.TABLE_NAME + "_v6");
+                    db.execSQL("CREATE INDEX weather_location_date_list ON "
+                            + WeatherEntry.TABLE_NAME + " (" + TextUtils.join(", ",
+                            LIST_INDEX_COLUMNS) + ")");
+                }
+            },
+            // 7 -> 8: the archive looks up the days before today of every location, which the
+            // unique key on the date used to find before the table was rebuilt
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE INDEX weather_date ON " + WeatherEntry.TABLE_NAME + " ("
+                            + WeatherEntry.COLUMN_DATE + ", " + WeatherEntry.COLUMN_LOC_KEY + ")");
+                }
+            },
+    };
 
     static final String DATABASE_NAME = "weather.db";
 
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Before Jelly Bean write-ahead logging can only be turned on once the database is open
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+    }
+
+    /**
+     * Copies what the last writes left in the log back into the database, so the log doesn't
+     * keep growing and readers don't have to look through it.  The checkpoint is passive, it
+     * stops at the first frame a reader still needs instead of waiting for it.
+     */
+    public void checkpoint() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        Cursor cursor = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+            // busy, frames in the log, frames checkpointed; -1 if the database isn't in WAL mode
+            if (cursor.moveToFirst()) {
+                Log.d(LOG_TAG, "Checkpointed " + cursor.getInt(2) + " of " + cursor.getInt(1)
+                        + " frames");
+            }
+        } finally {
+            cursor.close();
+        }
     }
 
     @Override
@@ -81,18 +301,45 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+
+        // The tables above are those of the oldest version we can migrate, a new database goes
+        // through the same steps as an upgraded one so the two can't drift apart
+        migrate(sqLiteDatabase, OLDEST_MIGRATABLE_VERSION, DATABASE_VERSION);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            Log.i(LOG_TAG, "No migration from version " + oldVersion + ", starting over");
+            dropTables(sqLiteDatabase);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        // Upgrades keep the stored forecasts, so the app has something to show straight away
+        // instead of waiting for the first sync
+        migrate(sqLiteDatabase, oldVersion, newVersion);
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        // We can't know what a newer version changed, but this database is only a cache for
+        // online data, so it can always start over
+        dropTables(sqLiteDatabase);
         onCreate(sqLiteDatabase);
     }
+
+    static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        for (int version = fromVersion; version < toVersion; version++) {
+            Log.d(LOG_TAG, "Migrating database from version " + version + " to " + (version + 1));
+            MIGRATIONS[version - OLDEST_MIGRATABLE_VERSION].migrate(db);
+        }
+    }
+
+    private static void dropTables(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + HourlyEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + HistoryEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + ArchiveEntry.TABLE_NAME);
+    }
 }
@@ -17,23 +17,43 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.text.format.Time;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private final LocationIdCache mLocationIds = new LocationIdCache();
+    // Set while applyBatch runs on a thread
+    private final ThreadLocal<BatchState> mBatch = new ThreadLocal<>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int HOURLY = 400;
+    static final int HOURLY_WITH_LOCATION = 401;
+    static final int ARCHIVE = 500;
+    static final int ARCHIVE_WITH_LOCATION = 501;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -51,61 +71,132 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
-    //location.location_setting = ?
-    private static final String sLocationSettingSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
+    private static final String sSortByDate = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    //weather.location_id = ?
+    private static final String sLocationIdSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
 
-    //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+    //weather.location_id = ? AND date >= ?
+    private static final String sLocationIdWithStartDateSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
-    //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
-            WeatherContract.LocationEntry.TABLE_NAME +
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+    //hourly.location_id = ? AND hour >= ? AND hour < ?
+    private static final String sHourlyLocationIdAndRangeSelection =
+            WeatherContract.HourlyEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.HourlyEntry.COLUMN_HOUR + " >= ? AND " +
+                    WeatherContract.HourlyEntry.COLUMN_HOUR + " < ? ";
+
+    //archive.location_id = ? AND period = ?
+    private static final String sArchiveLocationIdAndPeriodSelection =
+            WeatherContract.ArchiveEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.ArchiveEntry.COLUMN_PERIOD + " = ? ";
+
+    //weather.location_id = ? AND date = ?
+    private static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
-    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+    // The columns of the compiled bulk insert statements, the last two identify the row
+    private static final String[] WEATHER_STATEMENT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE
+    };
+
+    //UPDATE weather SET weather_id = ?1, ..., date = ?10 WHERE location_id = ?9 AND slot = ?11
+    // Overwrites whatever day the slot holds, the same day or one that has passed
+    private static final String sUpdateWeatherSql =
+            "UPDATE " + WeatherContract.WeatherEntry.TABLE_NAME + " SET " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + " = ?1, " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + " = ?2, " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + " = ?3, " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + " = ?4, " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + " = ?5, " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + " = ?6, " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + " = ?7, " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES + " = ?8, " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ?10 " +
+                    "WHERE " + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?9 AND " +
+                    WeatherContract.WeatherEntry.COLUMN_SLOT + " = ?11";
+
+    //INSERT INTO weather (weather_id, ..., location_id, date, slot) VALUES (?, ...)
+    private static final String sInsertWeatherSql =
+            "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+                    TextUtils.join(", ", WEATHER_STATEMENT_COLUMNS) + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_SLOT +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    //SELECT _id FROM weather WHERE location_id = ? AND date = ?
+    private static final String sSelectWeatherIdSql =
+            "SELECT " + WeatherContract.WeatherEntry._ID + " FROM " +
+                    WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " + sLocationIdAndDaySelection;
+
+    /**
+     * The SQL a query of the provider runs, built apart from running it so the query plan of
+     * every route can be checked.
+     */
+    static final class Query {
+        final String sql;
+        final String[] selectionArgs;
+
+        Query(String sql, String[] selectionArgs) {
+            this.sql = sql;
+            this.selectionArgs = selectionArgs;
+        }
+    }
+
+    // The location setting of a uri is resolved to its id up front, so the join only has to
+    // fetch the location columns of the rows it found by location_id
+    private static Query getWeatherByLocationSetting(long locationId, Uri uri,
+                                                     String[] projection, String sortOrder) {
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
         String[] selectionArgs;
         String selection;
 
         if (startDate == 0) {
-            selection = sLocationSettingSelection;
-            selectionArgs = new String[]{locationSetting};
+            selection = sLocationIdSelection;
+            selectionArgs = new String[]{Long.toString(locationId)};
         } else {
-            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
+            selectionArgs = new String[]{Long.toString(locationId), Long.toString(startDate)};
+            selection = sLocationIdWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return new Query(SQLiteQueryBuilder.buildQueryString(false,
+                sWeatherByLocationSettingQueryBuilder.getTables(),
                 projection,
                 selection,
-                selectionArgs,
                 null,
                 null,
-                sortOrder
-        );
+                sortOrder,
+                null
+        ), selectionArgs);
     }
 
-    private Cursor getWeatherByLocationSettingAndDate(
-            Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+    private static Query getWeatherByLocationSettingAndDate(long locationId, Uri uri,
+                                                            String[] projection, String sortOrder) {
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return new Query(SQLiteQueryBuilder.buildQueryString(false,
+                sWeatherByLocationSettingQueryBuilder.getTables(),
                 projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
+                WeatherContract.WeatherEntry.TABLE_NAME + "." + sLocationIdAndDaySelection,
                 null,
                 null,
-                sortOrder
-        );
+                sortOrder,
+                null
+        ), new String[]{Long.toString(locationId), Long.toString(date)});
     }
 
     /*
@@ -130,6 +221,12 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, HOURLY);
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY + "/*", HOURLY_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE, ARCHIVE);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE + "/*", ARCHIVE_WITH_LOCATION);
         return matcher;
     }
 
@@ -164,6 +261,14 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HOURLY_WITH_LOCATION:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
+            case HOURLY:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
+            case ARCHIVE_WITH_LOCATION:
+                return WeatherContract.ArchiveEntry.CONTENT_TYPE;
+            case ARCHIVE:
+                return WeatherContract.ArchiveEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -172,53 +277,142 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        Cursor retCursor = null;
+        if (WeatherContract.WeatherEntry.isSnapshotUri(uri)) {
+            retCursor = querySnapshot(db, uri, projection, selection, sortOrder);
+        }
+        if (retCursor == null) {
+            Query query = buildQuery(db, mLocationIds, uri, projection, selection, selectionArgs,
+                    sortOrder);
+            retCursor = db.rawQuery(query.sql, query.selectionArgs);
+        }
+        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return retCursor;
+    }
+
+    /**
+     * @return an array cursor over the forecast in memory, or null if the query asks for more
+     * than the snapshot has and has to go to the database.
+     */
+    private Cursor querySnapshot(SQLiteDatabase db, Uri uri, String[] projection,
+                                 String selection, String sortOrder) {
+        if (sUriMatcher.match(uri) != WEATHER_WITH_LOCATION || selection != null
+                || (sortOrder != null && !sortOrder.equals(sSortByDate))) {
+            return null;
+        }
+        int[] columns = ForecastArrayCursor.getColumns(projection);
+        if (columns == null) {
+            return null;
+        }
+        ForecastSnapshot snapshot = ForecastSnapshotCache.getForecast(db, mLocationIds,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(uri),
+                WeatherContract.WeatherEntry.getStartDateFromUri(uri));
+        return new ForecastArrayCursor(snapshot, projection, columns);
+    }
+
+    static Query buildQuery(SQLiteDatabase db, LocationIdCache locationIds, Uri uri,
+                            String[] projection, String selection, String[] selectionArgs,
+                            String sortOrder) {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
-        Cursor retCursor;
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
-                break;
+                long locationId = locationIds.getLocationId(db,
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+                return getWeatherByLocationSettingAndDate(locationId, uri, projection, sortOrder);
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
-                break;
+                long locationId = locationIds.getLocationId(db,
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+                return getWeatherByLocationSetting(locationId, uri, projection, sortOrder);
             }
             // "weather"
             case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
+                return new Query(SQLiteQueryBuilder.buildQueryString(false,
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         projection,
                         selection,
-                        selectionArgs,
                         null,
                         null,
-                        sortOrder
-                );
-                break;
+                        sortOrder,
+                        null
+                ), selectionArgs);
             }
             // "location"
             case LOCATION: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
+                return new Query(SQLiteQueryBuilder.buildQueryString(false,
                         WeatherContract.LocationEntry.TABLE_NAME,
                         projection,
                         selection,
-                        selectionArgs,
                         null,
                         null,
-                        sortOrder
-                );
-                break;
+                        sortOrder,
+                        null
+                ), selectionArgs);
+            }
+            // "hourly/*"
+            case HOURLY_WITH_LOCATION: {
+                long locationId = locationIds.getLocationId(db,
+                        WeatherContract.HourlyEntry.getLocationSettingFromUri(uri));
+                return new Query(SQLiteQueryBuilder.buildQueryString(false,
+                        WeatherContract.HourlyEntry.TABLE_NAME,
+                        projection,
+                        sHourlyLocationIdAndRangeSelection,
+                        null,
+                        null,
+                        sortOrder,
+                        null
+                ), new String[]{Long.toString(locationId),
+                        Long.toString(WeatherContract.HourlyEntry.getStartHourFromUri(uri)),
+                        Long.toString(WeatherContract.HourlyEntry.getEndHourFromUri(uri))});
+            }
+            // "hourly"
+            case HOURLY: {
+                return new Query(SQLiteQueryBuilder.buildQueryString(false,
+                        WeatherContract.HourlyEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        null,
+                        null,
+                        sortOrder,
+                        null
+                ), selectionArgs);
+            }
+            // "archive/*"
+            case ARCHIVE_WITH_LOCATION: {
+                long locationId = locationIds.getLocationId(db,
+                        WeatherContract.ArchiveEntry.getLocationSettingFromUri(uri));
+                return new Query(SQLiteQueryBuilder.buildQueryString(false,
+                        WeatherContract.ArchiveEntry.TABLE_NAME,
+                        projection,
+                        sArchiveLocationIdAndPeriodSelection,
+                        null,
+                        null,
+                        sortOrder,
+                        null
+                ), new String[]{Long.toString(locationId),
+                        Integer.toString(WeatherContract.ArchiveEntry.getPeriodFromUri(uri))});
+            }
+            // "archive"
+            case ARCHIVE: {
+                return new Query(SQLiteQueryBuilder.buildQueryString(false,
+                        WeatherContract.ArchiveEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        null,
+                        null,
+                        sortOrder,
+                        null
+                ), selectionArgs);
             }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
-        return retCursor;
     }
 
     /*
@@ -232,8 +426,17 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER: {
-                normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id;
+                BatchState batch = mBatch.get();
+                if (batch != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                        && isCompleteWeatherRow(values)) {
+                    // Inside a batch the statements are compiled once for all its inserts, and
+                    // an existing day is updated in place like bulkInsert does
+                    _id = batch.getWeatherStatements(db).upsertForId(values);
+                } else {
+                    normalizeDate(values);
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
@@ -241,17 +444,37 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                // Inserting a location that's already stored gets its id, so the sync can add
+                // its locations without looking them up first
+                String locationSetting = values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                long _id = locationSetting == null
+                        ? -1 : mLocationIds.getLocationId(db, locationSetting);
+                if (_id != -1) {
+                    return WeatherContract.LocationEntry.buildLocationUri(_id);
+                }
+                _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                if (_id > 0 && locationSetting != null) {
+                    mLocationIds.put(locationSetting, _id);
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
+            case HOURLY: {
+                long _id = db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = ContentUris.withAppendedId(uri, _id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                break;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -264,28 +487,51 @@ public class WeatherProvider extends ContentProvider {
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                if (WeatherContract.WeatherEntry.isArchiveUri(uri)) {
+                    beginTransaction(db);
+                    try {
+                        rowsDeleted = WeatherArchive.archive(db, selection, selectionArgs,
+                                System.currentTimeMillis());
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    if (rowsDeleted != 0) {
+                        notifyChange(WeatherContract.ArchiveEntry.CONTENT_URI);
+                        uri = WeatherContract.WeatherEntry.CONTENT_URI;
+                    }
+                } else {
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                }
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                mLocationIds.invalidate();
+                break;
+            case HOURLY:
+                rowsDeleted = db.delete(
+                        WeatherContract.HourlyEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
 
-    private void normalizeDate(ContentValues values) {
-        // normalize the date value
+    private static void normalizeDate(ContentValues values) {
+        // normalize the date value, and keep the day in its slot
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
             long dateValue = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(dateValue));
+            long date = WeatherContract.normalizeDate(dateValue);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+            values.put(WeatherContract.WeatherEntry.COLUMN_SLOT,
+                    WeatherContract.WeatherEntry.getSlot(date));
         }
     }
 
@@ -305,12 +551,17 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                mLocationIds.invalidate();
+                break;
+            case HOURLY:
+                rowsUpdated = db.update(WeatherContract.HourlyEntry.TABLE_NAME, values, selection,
+                        selectionArgs);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,27 +572,291 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
+                beginTransaction(db);
+                int returnCount;
+                try {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                        returnCount = upsertWeatherCompiled(db, values);
+                    } else {
+                        returnCount = upsertWeather(db, values);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (returnCount > 0) {
+                    notifyChange(uri);
+                }
+                return returnCount;
+            case HOURLY: {
+                // The unique key replaces a slot that is already stored
+                beginTransaction(db);
+                int insertCount = 0;
                 try {
                     for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
+                        if (db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, value) != -1) {
+                            insertCount++;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
+                if (insertCount > 0) {
+                    notifyChange(uri);
+                }
+                return insertCount;
+            }
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Writes weather rows one ContentValues at a time.  Must be called inside a transaction.
+     *
+     * @return the number of rows inserted or updated
+     */
+    static int upsertWeather(SQLiteDatabase db, ContentValues[] values) {
+        int returnCount = 0;
+        for (ContentValues value : values) {
+            returnCount += upsertWeatherRow(db, value);
+        }
+        return returnCount;
+    }
+
+    private static int upsertWeatherRow(SQLiteDatabase db, ContentValues value) {
+        normalizeDate(value);
+        // Update the row for the day in place if there is one, rather than
+        // letting the unique constraint delete it and insert a new one.  A day that has passed
+        // in the slot is replaced by the unique constraint.
+        if (value.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                && value.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)
+                && db.update(WeatherContract.WeatherEntry.TABLE_NAME, value,
+                        sLocationIdAndDaySelection, new String[]{
+                                value.getAsString(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                                value.getAsString(WeatherContract.WeatherEntry.COLUMN_DATE)}) > 0) {
+            return 1;
+        }
+        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+        return _id != -1 ? 1 : 0;
+    }
+
+    /**
+     * Writes weather rows through one UPDATE and one INSERT statement that are compiled once for
+     * the whole batch, binding primitives instead of building SQL for every row.  Rows that don't
+     * have every column take the {@link #upsertWeather} path.  Must be called inside a
+     * transaction.
+     *
+     * @return the number of rows inserted or updated
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static int upsertWeatherCompiled(SQLiteDatabase db, ContentValues[] values) {
+        WeatherStatements statements = new WeatherStatements(db);
+        int returnCount = 0;
+        try {
+            for (ContentValues value : values) {
+                if (!isCompleteWeatherRow(value)) {
+                    returnCount += upsertWeatherRow(db, value);
+                } else if (statements.upsert(value) != -1) {
+                    returnCount++;
+                }
+            }
+        } finally {
+            statements.close();
+        }
+        return returnCount;
+    }
+
+    private static boolean isCompleteWeatherRow(ContentValues value) {
+        if (value.size() != WEATHER_STATEMENT_COLUMNS.length) {
+            return false;
+        }
+        for (String column : WEATHER_STATEMENT_COLUMNS) {
+            if (value.get(column) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The compiled statements of a weather upsert, good for as many rows as the transaction
+     * they were compiled in writes.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static class WeatherStatements {
+        private final SQLiteStatement mUpdate;
+        private final SQLiteStatement mInsert;
+        private final SQLiteDatabase mDb;
+        private SQLiteStatement mSelectId;
+        // Normalizing dates needs a Time, one is enough for all the rows
+        private final Time mTime = new Time();
+
+        WeatherStatements(SQLiteDatabase db) {
+            mDb = db;
+            mUpdate = db.compileStatement(sUpdateWeatherSql);
+            mInsert = db.compileStatement(sInsertWeatherSql);
+        }
+
+        /**
+         * Writes a row that has every column of WEATHER_STATEMENT_COLUMNS, over the row of its
+         * slot if there is one.
+         *
+         * @return the id of the inserted row, 0 if an existing row was overwritten, or -1 if
+         * the row couldn't be written
+         */
+        long upsert(ContentValues value) {
+            bindWeatherRow(mUpdate, value);
+            if (mUpdate.executeUpdateDelete() > 0) {
+                return 0;
+            }
+            bindWeatherRow(mInsert, value);
+            return mInsert.executeInsert();
+        }
+
+        /**
+         * Like {@link #upsert} but also looks up the id of an updated row.
+         */
+        long upsertForId(ContentValues value) {
+            long id = upsert(value);
+            if (id == 0) {
+                if (mSelectId == null) {
+                    mSelectId = mDb.compileStatement(sSelectWeatherIdSql);
+                }
+                mSelectId.bindLong(1, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+                mSelectId.bindLong(2, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+                id = mSelectId.simpleQueryForLong();
+            }
+            return id;
+        }
+
+        void close() {
+            mUpdate.close();
+            mInsert.close();
+            if (mSelectId != null) {
+                mSelectId.close();
+            }
+        }
+
+        // Both statements take the columns in the order of WEATHER_STATEMENT_COLUMNS, then the
+        // slot
+        private void bindWeatherRow(SQLiteStatement statement, ContentValues value) {
+            long dateValue = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            mTime.set(dateValue);
+            long date = mTime.setJulianDay(Time.getJulianDay(dateValue, mTime.gmtoff));
+            if (date != dateValue) {
+                // Callers expect to find the normalized date in their values, like the slow path
+                value.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+            }
+
+            statement.bindLong(1, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+            statement.bindString(2, value.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+            statement.bindDouble(3, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+            statement.bindDouble(4, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+            statement.bindDouble(5, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY));
+            statement.bindDouble(6, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE));
+            statement.bindDouble(7, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED));
+            statement.bindDouble(8, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES));
+            statement.bindLong(9, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+            statement.bindLong(10, date);
+            statement.bindLong(11, WeatherContract.WeatherEntry.getSlot(date));
+        }
+    }
+
+    /**
+     * The state of an {@link #applyBatch} running on the current thread.
+     */
+    private static class BatchState {
+        // Every uri changed by the batch, notified once when it commits
+        final Set<Uri> mChangedUris = new LinkedHashSet<>();
+        private WeatherStatements mWeatherStatements;
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        WeatherStatements getWeatherStatements(SQLiteDatabase db) {
+            if (mWeatherStatements == null) {
+                mWeatherStatements = new WeatherStatements(db);
+            }
+            return mWeatherStatements;
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        void close() {
+            if (mWeatherStatements != null) {
+                mWeatherStatements.close();
+            }
+        }
+    }
+
+    /**
+     * Applies the operations in a single transaction, so a batch is written all or nothing and
+     * readers never see half of it.  Observers are told about every uri the batch changed once,
+     * after it committed, rather than once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        BatchState batch = new BatchState();
+        mBatch.set(batch);
+        ContentProviderResult[] results = null;
+        beginTransaction(db);
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            batch.close();
+            db.endTransaction();
+            mBatch.remove();
+            if (results == null) {
+                // Locations the batch inserted are gone again
+                mLocationIds.invalidate();
+            }
+        }
+        if (!batch.mChangedUris.isEmpty()) {
+            ForecastSnapshotCache.invalidate();
+        }
+        for (Uri uri : batch.mChangedUris) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    /**
+     * Starts an immediate rather than an exclusive transaction where we can, which lets readers
+     * carry on from their own connections while it runs.
+     */
+    private static void beginTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_CHECKPOINT.equals(method)) {
+            mOpenHelper.checkpoint();
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Tells the snapshot cache and observers about a change that committed, or if a batch is
+     * running on this thread, remembers to tell them once it committed.
+     */
+    private void notifyChange(Uri uri) {
+        BatchState batch = mBatch.get();
+        if (batch != null) {
+            batch.mChangedUris.add(uri);
+        } else {
+            ForecastSnapshotCache.invalidate();
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,156 @@
+package com.example.android.sunshine.app.sync;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.widget.DetailWidgetProvider;
+import com.example.android.sunshine.app.widget.TodayWidgetProvider;
+
+/**
+ * Stretches and shrinks the periodic sync interval instead of always waking up every
+ * {@link SunshineSyncAdapter#SYNC_INTERVAL} seconds.
+ *
+ * After every sync of the preferred location the interval is halved if the weather is changing
+ * fast (a different weather_id or a big temperature swing for a day we already had) or if the
+ * app is being opened often, and doubled if the forecast came back identical while nobody has
+ * looked at the app or has a widget.  Anything in between drifts back to the default.
+ */
+public class AdaptiveSyncScheduler {
+    public static final String LOG_TAG = AdaptiveSyncScheduler.class.getSimpleName();
+
+    static final int MIN_SYNC_INTERVAL = 60 * 60;
+    static final int MAX_SYNC_INTERVAL = 60 * 60 * 12;
+
+    // A swing of this many degrees in the high or low of a day means the weather is unsettled
+    static final double VOLATILE_TEMP_DELTA = 3.0;
+
+    static final int FORECAST_UNCHANGED = 0;
+    static final int FORECAST_CHANGED = 1;
+    static final int FORECAST_VOLATILE = 2;
+
+    private static final String PREFS_NAME = "adaptive_sync";
+    private static final String KEY_INTERVAL = "interval";
+    private static final String KEY_LAST_OPENED = "last_opened";
+    private static final String KEY_OPEN_SCORE = "open_score";
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // Roughly how many opens in the last day count as using the app often
+    private static final float FREQUENT_OPEN_SCORE = 3f;
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    AdaptiveSyncScheduler(Context context) {
+        mContext = context;
+        mPrefs = getPrefs(context);
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Records that the user looked at the forecast.  If syncs had been spread out because the
+     * device sat idle, they go back to the default interval straight away.
+     *
+     * @param context Context used to get the SharedPreferences
+     */
+    public static void recordAppOpened(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        long now = System.currentTimeMillis();
+        float score = getDecayedScore(prefs, now) + 1f;
+        int interval = prefs.getInt(KEY_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+
+        SharedPreferences.Editor editor = prefs.edit()
+                .putLong(KEY_LAST_OPENED, now)
+                .putFloat(KEY_OPEN_SCORE, score);
+        if (interval > SunshineSyncAdapter.SYNC_INTERVAL) {
+            editor.putInt(KEY_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+            SunshineSyncAdapter.configurePeriodicSync(context, SunshineSyncAdapter.SYNC_INTERVAL,
+                    SunshineSyncAdapter.SYNC_FLEXTIME);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Picks the interval for the next periodic syncs from how the forecast of the preferred
+     * location changed and how the app is used.  Must be called from the sync thread.
+     *
+     * @param change one of {@link #FORECAST_UNCHANGED}, {@link #FORECAST_CHANGED} or
+     * {@link #FORECAST_VOLATILE}
+     */
+    void onSyncFinished(int change) {
+        long now = System.currentTimeMillis();
+        int interval = mPrefs.getInt(KEY_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+        boolean frequentUse = getDecayedScore(mPrefs, now) >= FREQUENT_OPEN_SCORE;
+        boolean idle = now - mPrefs.getLong(KEY_LAST_OPENED, 0) > DAY_IN_MILLIS
+                && !hasWidgets();
+
+        int newInterval;
+        if (change == FORECAST_VOLATILE || frequentUse) {
+            newInterval = Math.max(MIN_SYNC_INTERVAL, interval / 2);
+        } else if (change == FORECAST_UNCHANGED && idle) {
+            newInterval = Math.min(MAX_SYNC_INTERVAL, interval * 2);
+        } else if (interval < SunshineSyncAdapter.SYNC_INTERVAL) {
+            newInterval = Math.min(SunshineSyncAdapter.SYNC_INTERVAL, interval * 2);
+        } else {
+            newInterval = Math.max(SunshineSyncAdapter.SYNC_INTERVAL, interval / 2);
+        }
+
+        if (newInterval != interval) {
+            Log.d(LOG_TAG, "Sync interval " + interval + "s -> " + newInterval + "s");
+            mPrefs.edit().putInt(KEY_INTERVAL, newInterval).commit();
+            SunshineSyncAdapter.configurePeriodicSync(mContext, newInterval, newInterval / 3);
+        }
+    }
+
+    private boolean hasWidgets() {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(mContext);
+        return appWidgetManager.getAppWidgetIds(
+                new ComponentName(mContext, TodayWidgetProvider.class)).length > 0
+                || appWidgetManager.getAppWidgetIds(
+                new ComponentName(mContext, DetailWidgetProvider.class)).length > 0;
+    }
+
+    /**
+     * @return the number of recent opens, where each open counts less the longer ago it was.
+     */
+    private static float getDecayedScore(SharedPreferences prefs, long now) {
+        long elapsed = Math.max(0, now - prefs.getLong(KEY_LAST_OPENED, now));
+        return prefs.getFloat(KEY_OPEN_SCORE, 0f) * (float) Math.exp(-(double) elapsed / DAY_IN_MILLIS);
+    }
+
+    /**
+     * Compares a fresh forecast with the days stored for the same location.
+     *
+     * @param stored the stored days
+     * @param incoming the days just received
+     * @return {@link #FORECAST_VOLATILE} if a day we already had changed its weather_id or
+     * moved its high or low by {@link #VOLATILE_TEMP_DELTA} or more,
+     * {@link #FORECAST_UNCHANGED} if every day is already stored as is, and
+     * {@link #FORECAST_CHANGED} otherwise.
+     */
+    static int classifyChange(ForecastBatch stored, ForecastBatch incoming) {
+        int change = FORECAST_UNCHANGED;
+        for (int i = 0; i < incoming.size(); i++) {
+            int j = stored.indexOfDate(incoming.getDate(i));
+            if (j < 0) {
+                change = FORECAST_CHANGED;
+                continue;
+            }
+            if (stored.getWeatherId(j) != incoming.getWeatherId(i)
+                    || Math.abs(stored.getMaxTemp(j) - incoming.getMaxTemp(i)) >= VOLATILE_TEMP_DELTA
+                    || Math.abs(stored.getMinTemp(j) - incoming.getMinTemp(i)) >= VOLATILE_TEMP_DELTA) {
+                return FORECAST_VOLATILE;
+            }
+            if (!incoming.sameDay(i, stored, j)) {
+                change = FORECAST_CHANGED;
+            }
+        }
+        return change;
+    }
+}
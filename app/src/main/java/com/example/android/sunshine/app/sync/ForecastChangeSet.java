@@ -0,0 +1,85 @@
+package com.example.android.sunshine.app.sync;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What a sync actually changed in the database: the dates whose rows were inserted or updated,
+ * per location, and whether days that went by were removed.  Lets everything downstream of the
+ * sync skip its work when nothing it shows has changed.
+ */
+class ForecastChangeSet {
+    private final Map<String, Set<Long>> mChangedDates;
+    private final boolean mDaysRemoved;
+
+    private ForecastChangeSet(Map<String, Set<Long>> changedDates, boolean daysRemoved) {
+        mChangedDates = changedDates;
+        mDaysRemoved = daysRemoved;
+    }
+
+    /**
+     * @return true if any row of the location was inserted or updated.
+     */
+    boolean hasChanges(String locationSetting) {
+        return mChangedDates.containsKey(locationSetting);
+    }
+
+    /**
+     * @return true if the row of the location for the (normalized) date was inserted or updated.
+     */
+    boolean isChanged(String locationSetting, long date) {
+        Set<Long> dates = mChangedDates.get(locationSetting);
+        return dates != null && dates.contains(date);
+    }
+
+    /**
+     * @return the changed dates of the location in ascending order, possibly empty.
+     */
+    Set<Long> getChangedDates(String locationSetting) {
+        Set<Long> dates = mChangedDates.get(locationSetting);
+        return dates == null ? Collections.<Long>emptySet() : dates;
+    }
+
+    /**
+     * @return true if rows of days that are over were deleted, i.e. "today" moved on.
+     */
+    boolean isDaysRemoved() {
+        return mDaysRemoved;
+    }
+
+    @Override
+    public String toString() {
+        return "changed " + mChangedDates + (mDaysRemoved ? ", past days removed" : "");
+    }
+
+    static class Builder {
+        private final Map<String, Set<Long>> mChangedDates = new HashMap<>();
+        private boolean mDaysRemoved;
+
+        Builder addChangedDate(String locationSetting, long date) {
+            Set<Long> dates = mChangedDates.get(locationSetting);
+            if (dates == null) {
+                dates = new TreeSet<>();
+                mChangedDates.put(locationSetting, dates);
+            }
+            dates.add(date);
+            return this;
+        }
+
+        Builder setDaysRemoved(boolean daysRemoved) {
+            mDaysRemoved = daysRemoved;
+            return this;
+        }
+
+        ForecastChangeSet build() {
+            Map<String, Set<Long>> changedDates = new HashMap<>();
+            for (Map.Entry<String, Set<Long>> entry : mChangedDates.entrySet()) {
+                changedDates.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+            }
+            return new ForecastChangeSet(Collections.unmodifiableMap(changedDates), mDaysRemoved);
+        }
+    }
+}
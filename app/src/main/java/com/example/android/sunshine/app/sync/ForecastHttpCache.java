@@ -0,0 +1,116 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Remembers the HTTP cache validators (ETag, Last-Modified and the Cache-Control max-age) of the
+ * last forecast response for each location, so that the next sync can either skip the request
+ * altogether or ask the server whether anything changed instead of downloading it again.
+ */
+class ForecastHttpCache {
+    private static final String PREFS_NAME = "forecast_http_cache";
+
+    private static final String KEY_ETAG = "etag:";
+    private static final String KEY_LAST_MODIFIED = "last_modified:";
+    private static final String KEY_EXPIRES = "expires:";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String DIRECTIVE_MAX_AGE = "max-age=";
+    private static final String DIRECTIVE_NO_CACHE = "no-cache";
+    private static final String DIRECTIVE_NO_STORE = "no-store";
+
+    private final SharedPreferences mPrefs;
+
+    ForecastHttpCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if the server said the last response for this location may be reused
+     * without asking again until now.
+     */
+    boolean isFresh(String locationSetting) {
+        return System.currentTimeMillis() < mPrefs.getLong(KEY_EXPIRES + locationSetting, 0);
+    }
+
+    /**
+     * Makes the request conditional on the last response we stored for this location by adding
+     * its validators to the request headers.
+     */
+    void addValidators(Map<String, String> headers, String locationSetting) {
+        String etag = mPrefs.getString(KEY_ETAG + locationSetting, null);
+        if (etag != null) {
+            headers.put(HEADER_IF_NONE_MATCH, etag);
+        }
+        String lastModified = mPrefs.getString(KEY_LAST_MODIFIED + locationSetting, null);
+        if (lastModified != null) {
+            headers.put(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * Stores the validators of a response once its content is safely in the database.  A 304
+     * response is stored too, since it may carry a new ETag or max-age.
+     */
+    void store(SunshineHttpClient.Response response, String locationSetting) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+
+        String etag = response.getHeader(HEADER_ETAG);
+        if (etag != null) {
+            editor.putString(KEY_ETAG + locationSetting, etag);
+        }
+        String lastModified = response.getHeader(HEADER_LAST_MODIFIED);
+        if (lastModified != null) {
+            editor.putString(KEY_LAST_MODIFIED + locationSetting, lastModified);
+        }
+        long maxAge = getMaxAge(response.getHeader(HEADER_CACHE_CONTROL));
+        editor.putLong(KEY_EXPIRES + locationSetting, System.currentTimeMillis() + maxAge * 1000);
+
+        editor.apply();
+    }
+
+    /**
+     * Forgets everything about a location, e.g. because its rows are no longer in the database
+     * and a 304 would leave us with nothing to show.
+     */
+    void clear(String locationSetting) {
+        mPrefs.edit()
+                .remove(KEY_ETAG + locationSetting)
+                .remove(KEY_LAST_MODIFIED + locationSetting)
+                .remove(KEY_EXPIRES + locationSetting)
+                .apply();
+    }
+
+    /**
+     * @return the max-age in seconds from a Cache-Control header, or 0 if the response must not
+     * be reused without asking the server.
+     */
+    static long getMaxAge(String cacheControl) {
+        if (cacheControl == null) {
+            return 0;
+        }
+        long maxAge = 0;
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim().toLowerCase(Locale.US);
+            if (directive.equals(DIRECTIVE_NO_CACHE) || directive.equals(DIRECTIVE_NO_STORE)) {
+                return 0;
+            } else if (directive.startsWith(DIRECTIVE_MAX_AGE)) {
+                try {
+                    maxAge = Long.parseLong(directive.substring(DIRECTIVE_MAX_AGE.length()));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return Math.max(0, maxAge);
+    }
+}
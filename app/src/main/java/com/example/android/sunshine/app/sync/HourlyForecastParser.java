@@ -0,0 +1,228 @@
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.app.data.HourlyBatch;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+/**
+ * Turns the OpenWeatherMap 5 day / 3 hour forecast response into an {@link HourlyBatch}.  Like
+ * {@link ForecastParser} it can build the {@link JSONObject} tree of a buffered body or stream
+ * the slots off the connection, with the same result.
+ *
+ * The city isn't read, the daily forecast of the same sync stores the location.
+ */
+class HourlyForecastParser {
+
+    private static final String OWM_LIST = "list";
+    private static final String OWM_TIME = "dt";
+
+    // The measurements are children of the "main" object
+    private static final String OWM_MAIN = "main";
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+
+    private static final String OWM_WIND = "wind";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    private static final long SECOND_IN_MILLIS = 1000;
+
+    // Bits used by the streaming parser to check that a slot had every field we need
+    private static final int FIELD_TIME = 1;
+    private static final int FIELD_TEMPERATURE = 1 << 1;
+    private static final int FIELD_PRESSURE = 1 << 2;
+    private static final int FIELD_HUMIDITY = 1 << 3;
+    private static final int FIELD_WINDSPEED = 1 << 4;
+    private static final int FIELD_WIND_DIRECTION = 1 << 5;
+    private static final int FIELD_WEATHER_ID = 1 << 6;
+    private static final int ALL_SLOT_FIELDS = (1 << 7) - 1;
+
+    static final class HourlyForecast {
+        int code = HttpURLConnection.HTTP_OK;
+        final HourlyBatch slots = new HourlyBatch();
+    }
+
+    private HourlyForecastParser() {
+    }
+
+    /**
+     * Parses a fully buffered response by building the {@link JSONObject} tree.
+     */
+    static HourlyForecast parse(String forecastJsonStr) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        HourlyForecast forecast = new HourlyForecast();
+
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            forecast.code = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (forecast.code != HttpURLConnection.HTTP_OK) {
+                return forecast;
+            }
+        }
+
+        JSONArray slotArray = forecastJson.getJSONArray(OWM_LIST);
+        for (int i = 0; i < slotArray.length(); i++) {
+            JSONObject slot = slotArray.getJSONObject(i);
+            JSONObject main = slot.getJSONObject(OWM_MAIN);
+            JSONObject wind = slot.getJSONObject(OWM_WIND);
+            JSONObject weatherObject = slot.getJSONArray(OWM_WEATHER).getJSONObject(0);
+
+            forecast.slots.add(
+                    slot.getLong(OWM_TIME) * SECOND_IN_MILLIS,
+                    weatherObject.getInt(OWM_WEATHER_ID),
+                    main.getDouble(OWM_TEMPERATURE),
+                    main.getDouble(OWM_HUMIDITY),
+                    main.getDouble(OWM_PRESSURE),
+                    wind.getDouble(OWM_WINDSPEED),
+                    wind.getDouble(OWM_WIND_DIRECTION));
+        }
+        return forecast;
+    }
+
+    /**
+     * Parses the response while it is being read.  Syntax and structure problems are reported
+     * as a {@link JSONException}, running out of input is an {@link IOException}.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static HourlyForecast parse(Reader in) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            return readForecast(reader);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static HourlyForecast readForecast(JsonReader reader)
+            throws IOException, JSONException {
+        HourlyForecast forecast = new HourlyForecast();
+        boolean hasList = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                forecast.code = (int) reader.nextDouble();
+                if (forecast.code != HttpURLConnection.HTTP_OK) {
+                    // The error may come after slots we already read; none of them count.
+                    forecast.slots.clear();
+                    return forecast;
+                }
+            } else if (OWM_LIST.equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readSlot(reader, forecast.slots);
+                }
+                reader.endArray();
+                hasList = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!hasList) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        return forecast;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readSlot(JsonReader reader, HourlyBatch slots)
+            throws IOException, JSONException {
+        long time = 0;
+        double temperature = 0;
+        double pressure = 0;
+        double humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+        int weatherId = 0;
+        int fields = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_TIME.equals(name)) {
+                time = reader.nextLong() * SECOND_IN_MILLIS;
+                fields |= FIELD_TIME;
+            } else if (OWM_MAIN.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String mainName = reader.nextName();
+                    if (OWM_TEMPERATURE.equals(mainName)) {
+                        temperature = reader.nextDouble();
+                        fields |= FIELD_TEMPERATURE;
+                    } else if (OWM_PRESSURE.equals(mainName)) {
+                        pressure = reader.nextDouble();
+                        fields |= FIELD_PRESSURE;
+                    } else if (OWM_HUMIDITY.equals(mainName)) {
+                        humidity = reader.nextDouble();
+                        fields |= FIELD_HUMIDITY;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WIND.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String windName = reader.nextName();
+                    if (OWM_WINDSPEED.equals(windName)) {
+                        windSpeed = reader.nextDouble();
+                        fields |= FIELD_WINDSPEED;
+                    } else if (OWM_WIND_DIRECTION.equals(windName)) {
+                        windDirection = reader.nextDouble();
+                        fields |= FIELD_WIND_DIRECTION;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Only the first element of the "weather" array describes the slot
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                            weatherId = (int) reader.nextDouble();
+                            fields |= FIELD_WEATHER_ID;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (fields != ALL_SLOT_FIELDS) {
+            throw new JSONException("Incomplete slot in " + OWM_LIST);
+        }
+        slots.add(time, weatherId, temperature, humidity, pressure, windSpeed, windDirection);
+    }
+}
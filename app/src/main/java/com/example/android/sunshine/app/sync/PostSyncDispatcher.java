@@ -0,0 +1,121 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastSnapshotCache;
+import com.example.android.sunshine.app.data.TodaySnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tells everything that shows the weather outside of the app's own screens (widgets, Muzei,
+ * the notification and Wear) about a finished sync.
+ *
+ * Today's weather is read once and handed to every consumer along with the change set of the
+ * sync.  Consumers that aren't affected are skipped, and the others run at the same time on a
+ * pool shared by every sync, so one waiting on an image download doesn't hold up the rest.
+ */
+class PostSyncDispatcher {
+    public static final String LOG_TAG = PostSyncDispatcher.class.getSimpleName();
+
+    // The sync process may go away once onPerformSync returns, so we wait for the consumers,
+    // but not forever
+    private static final long TIMEOUT_SECONDS = 30;
+
+    // Threads are only made for as many consumers as run at once, and go away when idle
+    private static final ExecutorService sExecutor = Executors.newCachedThreadPool();
+
+    interface Consumer {
+        /**
+         * @param today today's weather for the preferred location, or null if there is none
+         * @return true if the consumer has something to do after the sync, usually because it
+         * shows something the sync changed
+         */
+        boolean isAffected(ForecastChangeSet changes, TodaySnapshot today);
+
+        /**
+         * Called on a worker thread if the consumer is affected.
+         */
+        void consume(ForecastChangeSet changes, TodaySnapshot today);
+    }
+
+    private final Context mContext;
+    private final List<Consumer> mConsumers = new ArrayList<>();
+
+    PostSyncDispatcher(Context context) {
+        mContext = context;
+    }
+
+    PostSyncDispatcher addConsumer(Consumer consumer) {
+        mConsumers.add(consumer);
+        return this;
+    }
+
+    /**
+     * Runs every affected consumer and waits for them to finish.
+     *
+     * @param changes what the sync changed
+     * @param preferredLocation the location the consumers show
+     */
+    void dispatch(final ForecastChangeSet changes, String preferredLocation) {
+        final TodaySnapshot today = ForecastSnapshotCache.getToday(mContext, preferredLocation);
+
+        List<Consumer> affected = new ArrayList<>(mConsumers.size());
+        for (Consumer consumer : mConsumers) {
+            if (consumer.isAffected(changes, today)) {
+                affected.add(consumer);
+            }
+        }
+        Log.d(LOG_TAG, affected.size() + " of " + mConsumers.size() + " consumers affected");
+        if (affected.isEmpty()) {
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(affected.size());
+        for (final Consumer consumer : affected) {
+            futures.add(sExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        consumer.consume(changes, today);
+                    } catch (RuntimeException e) {
+                        Log.e(LOG_TAG, "Error in " + consumer, e);
+                    }
+                }
+            }));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        try {
+            for (Future<?> future : futures) {
+                future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            Log.w(LOG_TAG, "Consumers still running after " + TIMEOUT_SECONDS + "s");
+        } catch (ExecutionException e) {
+            // consume catches what a consumer throws
+            Log.e(LOG_TAG, "Error in a consumer", e.getCause());
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the sync changed today's row of the snapshot's location, or today moved
+     * on to a row that was already stored.
+     */
+    static boolean isTodayChanged(ForecastChangeSet changes, TodaySnapshot today) {
+        return today != null && (changes.isDaysRemoved()
+                || changes.isChanged(today.locationSetting, today.date));
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Every HTTP request the app makes goes through here.
+ *
+ * Requests ask for a gzip encoded body, which we decode ourselves, and connections are never
+ * disconnected after a successful exchange: once a response has been read to the end and closed,
+ * {@link HttpURLConnection} returns its socket to the keep-alive pool, so the next request to
+ * the same host skips the TCP and DNS setup.  Each {@link Response} also reports how long the
+ * connect, the wait for the first byte and the transfer of the body took.
+ */
+public class SunshineHttpClient {
+    public static final String LOG_TAG = SunshineHttpClient.class.getSimpleName();
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    // Closing a response drains at most this much of an unread body to keep its connection
+    // reusable; anything bigger is cheaper to throw away with the connection.
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    private static final SunshineHttpClient sInstance = new SunshineHttpClient();
+
+    public static SunshineHttpClient getInstance() {
+        return sInstance;
+    }
+
+    private SunshineHttpClient() {
+    }
+
+    /**
+     * Performs a GET request.  The caller must {@link Response#close() close} the response,
+     * even if it doesn't read the body, so its connection can be reused.
+     *
+     * @param url the address to fetch
+     * @param headers extra request headers, e.g. cache validators
+     */
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        long startNanos = System.nanoTime();
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        try {
+            urlConnection.setRequestMethod("GET");
+            urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            // Setting this ourselves turns off the transparent decoding of HttpURLConnection,
+            // which isn't there on every platform version, so Response decodes the body instead.
+            urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            urlConnection.connect();
+            long connectedNanos = System.nanoTime();
+            int code = urlConnection.getResponseCode();
+            long firstByteNanos = System.nanoTime();
+
+            return new Response(urlConnection, code, startNanos, connectedNanos, firstByteNanos);
+        } catch (IOException e) {
+            urlConnection.disconnect();
+            throw e;
+        }
+    }
+
+    public Response get(URL url) throws IOException {
+        return get(url, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * A response whose body is read straight off the connection.
+     */
+    public static class Response implements Closeable {
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final long mStartNanos;
+        private final long mConnectedNanos;
+        private final long mFirstByteNanos;
+        private long mClosedNanos;
+
+        private InputStream mRawBody;
+        private CountingInputStream mCountingBody;
+        private InputStream mBody;
+        private boolean mClosed;
+
+        Response(HttpURLConnection connection, int code,
+                 long startNanos, long connectedNanos, long firstByteNanos) {
+            mConnection = connection;
+            mCode = code;
+            mStartNanos = startNanos;
+            mConnectedNanos = connectedNanos;
+            mFirstByteNanos = firstByteNanos;
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /**
+         * @return the decoded body, or an empty stream if the response has none.
+         */
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                if (mCode == HttpURLConnection.HTTP_NO_CONTENT
+                        || mCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    mRawBody = null;
+                } else if (mCode < HttpURLConnection.HTTP_BAD_REQUEST) {
+                    mRawBody = mConnection.getInputStream();
+                } else {
+                    mRawBody = mConnection.getErrorStream();
+                }
+                if (mRawBody == null) {
+                    mRawBody = new ByteArrayInputStream(new byte[0]);
+                    mCountingBody = new CountingInputStream(mRawBody);
+                    mBody = mCountingBody;
+                    return mBody;
+                }
+                mCountingBody = new CountingInputStream(mRawBody);
+                mBody = ENCODING_GZIP.equalsIgnoreCase(getHeader(HEADER_CONTENT_ENCODING))
+                        ? new GZIPInputStream(mCountingBody) : mCountingBody;
+            }
+            return mBody;
+        }
+
+        /**
+         * @return milliseconds spent setting up the connection, near zero if it was reused.
+         */
+        public long getConnectMillis() {
+            return (mConnectedNanos - mStartNanos) / 1000000;
+        }
+
+        /**
+         * @return milliseconds between the connection being ready and the response headers
+         * arriving.
+         */
+        public long getTimeToFirstByteMillis() {
+            return (mFirstByteNanos - mConnectedNanos) / 1000000;
+        }
+
+        /**
+         * @return milliseconds between the response headers arriving and the response being
+         * closed, which includes reading the body.
+         */
+        public long getTransferMillis() {
+            long end = mClosed ? mClosedNanos : System.nanoTime();
+            return (end - mFirstByteNanos) / 1000000;
+        }
+
+        /**
+         * @return the number of body bytes that came over the wire, before decoding.
+         */
+        public long getTransferredBytes() {
+            return mCountingBody == null ? 0 : mCountingBody.getCount();
+        }
+
+        /**
+         * Finishes the exchange.  The rest of the body is read and dropped so the connection
+         * can go back to the pool; if that fails the connection is thrown away instead.
+         */
+        @Override
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            boolean reusable = true;
+            try {
+                getBody();
+                byte[] buffer = new byte[4096];
+                int drained = 0;
+                int read;
+                while ((read = mCountingBody.read(buffer)) != -1) {
+                    drained += read;
+                    if (drained > MAX_DRAIN_BYTES) {
+                        reusable = false;
+                        break;
+                    }
+                }
+                mBody.close();
+            } catch (IOException e) {
+                Log.d(LOG_TAG, "Dropping connection to " + mConnection.getURL().getHost(), e);
+                reusable = false;
+            }
+            if (!reusable) {
+                mConnection.disconnect();
+            }
+            mClosedNanos = System.nanoTime();
+        }
+
+        @Override
+        public String toString() {
+            return mCode + " " + mConnection.getURL().getPath()
+                    + ", connect " + getConnectMillis() + "ms"
+                    + ", ttfb " + getTimeToFirstByteMillis() + "ms"
+                    + ", transfer " + getTransferMillis() + "ms"
+                    + ", " + getTransferredBytes() + " bytes";
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
@@ -7,11 +7,12 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -22,6 +23,7 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
@@ -35,8 +37,12 @@ import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.HourlyBatch;
+import com.example.android.sunshine.app.data.TodaySnapshot;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -47,22 +53,26 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
-import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -76,20 +86,32 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
 //    private static final long DAY_IN_MILLIS = 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // How many locations are downloaded at the same time during a sync
+    private static final int MAX_CONCURRENT_FETCHES = 4;
 
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+    private static final String[] STORED_WEATHER_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
     };
 
     // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_STORED_DATE = 0;
+    private static final int INDEX_STORED_HUMIDITY = 1;
+    private static final int INDEX_STORED_PRESSURE = 2;
+    private static final int INDEX_STORED_WIND_SPEED = 3;
+    private static final int INDEX_STORED_DEGREES = 4;
+    private static final int INDEX_STORED_MAX_TEMP = 5;
+    private static final int INDEX_STORED_MIN_TEMP = 6;
+    private static final int INDEX_STORED_SHORT_DESC = 7;
+    private static final int INDEX_STORED_WEATHER_ID = 8;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -109,269 +131,616 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        boolean manualSync = extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false);
+
+        // If the rows of the last response are still in the database we may not need to
+        // download them again, or at least can ask the server whether they changed.
+        ForecastHttpCache httpCache = new ForecastHttpCache(getContext());
+        List<String> locations = new ArrayList<>();
+        for (String location : Utility.getSavedLocations(getContext())) {
+            if (!hasCurrentForecast(location)) {
+                httpCache.clear(location);
+            } else if (!manualSync && httpCache.isFresh(location)) {
+                Log.d(LOG_TAG, "Skipping " + location + ", its forecast is still fresh");
+                continue;
+            }
+            locations.add(location);
+        }
+        if (locations.isEmpty()) {
+            Log.d(LOG_TAG, "Sync skipped, every forecast is still fresh");
+            return;
+        }
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        SyncRetryPolicy retryPolicy = new SyncRetryPolicy(getContext(), extras);
 
+        // Every location is downloaded and parsed on its own thread, so one slow response
+        // doesn't hold up the others, but only a few at a time to go easy on the radio and
+        // the server.
+        int julianStartDay = ForecastParser.getJulianStartDay();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_CONCURRENT_FETCHES, locations.size()));
+        List<Future<LocationForecast>> futures = new ArrayList<>(locations.size());
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
+            for (String location : locations) {
+                futures.add(executor.submit(new FetchForecastTask(location, julianStartDay,
+                        httpCache, location.equals(preferredLocation))));
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+            List<LocationForecast> results = new ArrayList<>(locations.size());
+            for (Future<LocationForecast> future : futures) {
+                results.add(future.get());
+            }
+            storeForecasts(results, preferredLocation, julianStartDay, httpCache);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // The sync was the last write for a while, fold its log into the database now
+                // instead of on some reader's time
+                getContext().getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                        WeatherContract.METHOD_CHECKPOINT, null, null);
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            boolean failed = false;
+            for (LocationForecast result : results) {
+                // An invalid location won't get any better by asking again
+                if (result.status == LOCATION_STATUS_SERVER_DOWN
+                        || result.status == LOCATION_STATUS_SERVER_INVALID) {
+                    failed = true;
+                } else if (result.status == LOCATION_STATUS_INVALID
+                        && !result.locationSetting.equals(preferredLocation)) {
+                    // So stop asking, the preferred location keeps its status to show instead
+                    Utility.removeSavedLocation(getContext(), result.locationSetting);
+                }
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
+            if (failed) {
+                retryPolicy.onFailure(syncResult);
+            } else {
+                retryPolicy.onSuccess();
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled, leave the status as it is and try again next time
+            Log.d(LOG_TAG, "Sync interrupted");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Error ", e.getCause());
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            retryPolicy.onFailure(syncResult);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+            executor.shutdownNow();
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * The outcome of fetching the forecast of one location.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
+    static class LocationForecast {
+        final String locationSetting;
+        @LocationStatus int status = LOCATION_STATUS_UNKNOWN;
+        // Null unless the server sent new rows
+        ForecastParser.Forecast forecast;
+        // Kept for its cache validators, which are only stored once the rows are; null if they
+        // must not be
+        SunshineHttpClient.Response response;
+        // The 3-hourly forecast, null unless it was asked for and arrived
+        HourlyForecastParser.HourlyForecast hourly;
+
+        LocationForecast(String locationSetting) {
+            this.locationSetting = locationSetting;
+        }
+    }
 
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
+    /**
+     * Downloads the forecast of one location and parses it as it arrives.  Runs on the sync
+     * executor, so it doesn't touch the database.
+     */
+    static class FetchForecastTask implements Callable<LocationForecast> {
+        private final String mLocationSetting;
+        private final int mJulianStartDay;
+        private final ForecastHttpCache mHttpCache;
+        private final boolean mFetchHourly;
+
+        FetchForecastTask(String locationSetting, int julianStartDay,
+                          ForecastHttpCache httpCache, boolean fetchHourly) {
+            mLocationSetting = locationSetting;
+            mJulianStartDay = julianStartDay;
+            mHttpCache = httpCache;
+            mFetchHourly = fetchHourly;
+        }
 
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+        @Override
+        public LocationForecast call() {
+            LocationForecast result = fetchDaily();
+            // Only the preferred location shows the forecast by the hour
+            if (mFetchHourly && result.status == LOCATION_STATUS_OK) {
+                result.hourly = fetchHourly();
+            }
+            return result;
+        }
 
-        final String OWM_MESSAGE_CODE = "cod";
+        private LocationForecast fetchDaily() {
+            LocationForecast result = new LocationForecast(mLocationSetting);
+
+            String format = "json";
+            String units = "metric";
+            int numDays = 14;
+
+            try {
+                // Construct the URL for the OpenWeatherMap query
+                // Possible parameters are avaiable at OWM's forecast API page, at
+                // http://openweathermap.org/API#forecast
+                final String FORECAST_BASE_URL =
+                        "http://api.openweathermap.org/data/2.5/forecast/daily?";
+                final String QUERY_PARAM = "q";
+                final String FORMAT_PARAM = "mode";
+                final String UNITS_PARAM = "units";
+                final String DAYS_PARAM = "cnt";
+                final String APPID_PARAM = "APPID";
+
+                Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+                        .appendQueryParameter(QUERY_PARAM, mLocationSetting)
+                        .appendQueryParameter(FORMAT_PARAM, format)
+                        .appendQueryParameter(UNITS_PARAM, units)
+                        .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                        .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                        .build();
+
+                URL url = new URL(builtUri.toString());
+
+                // Create the request to OpenWeatherMap, and open the connection
+                Map<String, String> headers = new HashMap<>();
+                mHttpCache.addValidators(headers, mLocationSetting);
+                result.response = SunshineHttpClient.getInstance().get(url, headers);
+                readDaily(result, mJulianStartDay);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error ", e);
+                // If the code didn't successfully get the weather data, there's no point in
+                // attempting to parse it.
+                result.status = LOCATION_STATUS_SERVER_DOWN;
+            } finally {
+                // Closing the response rather than disconnecting leaves the connection open
+                // for the next location.
+                if (result.response != null) {
+                    result.response.close();
+                    Log.d(LOG_TAG, "Forecast request: " + result.response);
+                }
+            }
+            return result;
+        }
 
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        /**
+         * Reads the response of a daily forecast request into the result.  The status of the
+         * response decides first: a location the server doesn't know is invalid, and any other
+         * error is an outage, whatever the body says, since the server sends an HTML or plain
+         * text page instead of JSON then.
+         */
+        static void readDaily(LocationForecast result, int julianStartDay) {
+            int code = result.response.getCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing changed since the last sync, so there's nothing to parse, store
+                // or tell anyone about.
+                Log.d(LOG_TAG, "Forecast for " + result.locationSetting + " not modified");
+                result.status = LOCATION_STATUS_OK;
+                return;
+            } else if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+                result.status = LOCATION_STATUS_INVALID;
+                return;
+            } else if (code < HttpURLConnection.HTTP_OK
+                    || code >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                Log.d(LOG_TAG, "Forecast for " + result.locationSetting + " failed with " + code);
+                result.status = LOCATION_STATUS_SERVER_DOWN;
+                return;
+            }
 
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(result.response.getBody()));
+                ForecastParser.Forecast forecast = readForecast(reader, julianStartDay);
+                if (forecast == null) {
+                    // Stream was empty.  No point in parsing.
+                    result.status = LOCATION_STATUS_SERVER_DOWN;
+                    return;
+                }
 
-                switch (errorCode) {
+                // do we have an error?
+                switch (forecast.code) {
                     case HttpURLConnection.HTTP_OK:
+                        result.forecast = forecast;
+                        result.status = LOCATION_STATUS_OK;
                         break;
                     case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
+                        result.status = LOCATION_STATUS_INVALID;
+                        break;
                     default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+                        result.status = LOCATION_STATUS_SERVER_DOWN;
+                        break;
                 }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error ", e);
+                result.status = LOCATION_STATUS_SERVER_DOWN;
+            } catch (JSONException e) {
+                Log.e(LOG_TAG, e.getMessage(), e);
+                result.status = LOCATION_STATUS_SERVER_INVALID;
             }
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
+        /**
+         * Downloads the 3-hourly forecast.  It isn't cached or retried, the next sync gets a
+         * newer one anyway.
+         *
+         * @return the parsed forecast, or null if there is none to store.
+         */
+        private HourlyForecastParser.HourlyForecast fetchHourly() {
+            SunshineHttpClient.Response response = null;
+            try {
+                final String HOURLY_BASE_URL =
+                        "http://api.openweathermap.org/data/2.5/forecast?";
+                final String QUERY_PARAM = "q";
+                final String FORMAT_PARAM = "mode";
+                final String UNITS_PARAM = "units";
+                final String APPID_PARAM = "APPID";
+
+                Uri builtUri = Uri.parse(HOURLY_BASE_URL).buildUpon()
+                        .appendQueryParameter(QUERY_PARAM, mLocationSetting)
+                        .appendQueryParameter(FORMAT_PARAM, "json")
+                        .appendQueryParameter(UNITS_PARAM, "metric")
+                        .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                        .build();
+
+                response = SunshineHttpClient.getInstance().get(new URL(builtUri.toString()),
+                        new HashMap<String, String>());
+                if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                    // An error page, not a forecast
+                    return null;
+                }
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(response.getBody()));
+                HourlyForecastParser.HourlyForecast hourly;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                    hourly = HourlyForecastParser.parse(reader);
+                } else {
+                    String body = readBody(reader);
+                    if (body == null) {
+                        return null;
+                    }
+                    hourly = HourlyForecastParser.parse(body);
+                }
+                return hourly.code == HttpURLConnection.HTTP_OK ? hourly : null;
+            } catch (IOException | JSONException e) {
+                Log.e(LOG_TAG, "Error fetching the hourly forecast", e);
+                return null;
+            } finally {
+                if (response != null) {
+                    response.close();
+                    Log.d(LOG_TAG, "Hourly forecast request: " + response);
+                }
+            }
+        }
 
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+        /**
+         * @return the parsed forecast, or null if the body was empty.
+         */
+        private static ForecastParser.Forecast readForecast(BufferedReader reader,
+                                                            int julianStartDay)
+                throws IOException, JSONException {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Pull the rows straight off the connection instead of buffering the whole
+                // body and building a JSON tree from it first.
+                return ForecastParser.parse(reader, julianStartDay);
+            }
 
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+            String body = readBody(reader);
+            if (body == null) {
+                return null;
+            }
+            return ForecastParser.parse(body, julianStartDay);
+        }
 
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+        /**
+         * @return the whole body, or null if it was empty.
+         */
+        private static String readBody(BufferedReader reader) throws IOException {
+            // Read the input stream into a String
+            StringBuffer buffer = new StringBuffer();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                // But it does make debugging a *lot* easier if you print out the completed
+                // buffer for debugging.
+                buffer.append(line + "\n");
+            }
 
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
+            if (buffer.length() == 0) {
+                return null;
+            }
+            return buffer.toString();
+        }
+    }
 
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+    /**
+     * Take the parsed forecasts and write the rows that differ from what's stored to the
+     * database in a single batch, then let everything that shows the weather know about it
+     * once, if anything changed at all.
+     *
+     * @param results the outcome of every location fetched by this sync
+     * @param preferredLocation the location whose status is shown to the user
+     * @param julianStartDay the Julian day of the first row of the forecasts
+     * @param httpCache where the validators of the stored responses go
+     */
+    private void storeForecasts(List<LocationForecast> results, String preferredLocation,
+                                int julianStartDay, ForecastHttpCache httpCache) {
+        boolean succeeded = false;
+        for (LocationForecast result : results) {
+            succeeded |= result.status == LOCATION_STATUS_OK;
+        }
+        if (!succeeded) {
+            // Nothing to store, and the days that have passed keep their slots until a sync
+            // brings the days that replace them
+            setPreferredLocationStatus(results, preferredLocation);
+            return;
+        }
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        ForecastChangeSet.Builder changes = new ForecastChangeSet.Builder();
+        // archive the days that have passed first, the new days take their slots
+        Time dayTime = new Time();
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.WeatherEntry.buildWeatherArchiveUri())
+                .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay))})
+                .build());
+        int preferredChange = -1;
+        int inserted = 0;
+        for (LocationForecast result : results) {
+            boolean preferred = result.locationSetting.equals(preferredLocation);
+            int locationOperation = -1;
+            if (result.forecast == null) {
+                if (preferred && result.status == LOCATION_STATUS_OK) {
+                    // A "not modified" answer is as unchanged as it gets
+                    preferredChange = AdaptiveSyncScheduler.FORECAST_UNCHANGED;
+                }
+            } else {
+                ForecastBatch days = result.forecast.days;
+                // Most of the forecast is usually what we got last time, only write what isn't
+                ForecastBatch stored = loadStoredDays(result.locationSetting);
+                if (preferred) {
+                    preferredChange = AdaptiveSyncScheduler.classifyChange(stored, days);
+                }
+                for (int i = 0; i < days.size(); i++) {
+                    int storedIndex = stored.indexOfDate(days.getDate(i));
+                    if (storedIndex < 0 || !days.sameDay(i, stored, storedIndex)) {
+                        if (locationOperation == -1) {
+                            locationOperation = addLocationOperation(operations, result);
+                        }
+                        operations.add(ContentProviderOperation
+                                .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                                .withValues(days.toContentValues(i))
+                                .withValueBackReference(
+                                        WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                                        locationOperation)
+                                .build());
+                        changes.addChangedDate(result.locationSetting, days.getDate(i));
+                        inserted++;
+                    }
+                }
+            }
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+            if (result.hourly != null && result.hourly.slots.size() > 0) {
+                HourlyBatch slots = result.hourly.slots;
+                long locationId = -1;
+                if (result.forecast == null) {
+                    // A "not modified" answer has no city to insert the location with, so the
+                    // slots go to the location we have.  If it is gone the validators are too,
+                    // and the next sync downloads the whole forecast again.
+                    locationId = findLocationId(result.locationSetting);
+                    if (locationId == -1) {
+                        httpCache.clear(result.locationSetting);
+                        result.response = null;
+                        continue;
+                    }
+                } else if (locationOperation == -1) {
+                    locationOperation = addLocationOperation(operations, result);
+                }
+                // The slots before the first one we got have passed, the others are replaced
+                ContentProviderOperation.Builder delete = ContentProviderOperation
+                        .newDelete(WeatherContract.HourlyEntry.CONTENT_URI)
+                        .withSelection(WeatherContract.HourlyEntry.COLUMN_LOC_KEY + " = ? AND "
+                                + WeatherContract.HourlyEntry.COLUMN_HOUR + " < ?",
+                                new String[]{Long.toString(locationId),
+                                        Long.toString(slots.getHour(0))});
+                if (locationId == -1) {
+                    delete.withSelectionBackReference(0, locationOperation);
+                }
+                operations.add(delete.build());
+                for (int i = 0; i < slots.size(); i++) {
+                    ContentProviderOperation.Builder insert = ContentProviderOperation
+                            .newInsert(WeatherContract.HourlyEntry.CONTENT_URI)
+                            .withValues(slots.toContentValues(i));
+                    if (locationId == -1) {
+                        insert.withValueBackReference(WeatherContract.HourlyEntry.COLUMN_LOC_KEY,
+                                locationOperation);
+                    } else {
+                        insert.withValue(WeatherContract.HourlyEntry.COLUMN_LOC_KEY, locationId);
+                    }
+                    operations.add(insert.build());
+                }
+            }
+        }
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
+        // One transaction for everything, so observers hear about it once
+        ContentProviderResult[] applied;
+        try {
+            applied = getContext().getContentResolver().applyBatch(
+                    getContext().getString(R.string.content_authority), operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error storing the forecasts", e);
+            return;
+        }
+        int archived = applied[0].count;
+        changes.setDaysRemoved(archived > 0);
 
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+        ForecastChangeSet changeSet = changes.build();
+        Log.d(LOG_TAG, "Sync Complete. " + inserted + " Upserted for " + results.size()
+                + " locations, " + changeSet);
 
-                double high;
-                double low;
+        for (LocationForecast result : results) {
+            // The rows are safely in the database now, so the next sync may rely on them
+            if (result.status == LOCATION_STATUS_OK && result.response != null) {
+                httpCache.store(result.response, result.locationSetting);
+            }
+        }
+        setPreferredLocationStatus(results, preferredLocation);
+        if (preferredChange != -1) {
+            new AdaptiveSyncScheduler(getContext()).onSyncFinished(preferredChange);
+        }
 
-                String description;
-                int weatherId;
+        createPostSyncDispatcher(preferredLocation).dispatch(changeSet, preferredLocation);
+    }
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+    private void setPreferredLocationStatus(List<LocationForecast> results,
+                                            String preferredLocation) {
+        for (LocationForecast result : results) {
+            if (result.locationSetting.equals(preferredLocation)) {
+                setLocationStatus(getContext(), result.status);
+            }
+        }
+    }
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+    /**
+     * Adds the insert of the location of a result with a new daily forecast, whose id the rows
+     * of the location take from the result of the operation.  Inserting a location the provider
+     * already has gets its id.
+     *
+     * @return the index of the operation
+     */
+    private static int addLocationOperation(ArrayList<ContentProviderOperation> operations,
+                                            LocationForecast result) {
+        operations.add(ContentProviderOperation
+                .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                .withValue(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        result.locationSetting)
+                .withValue(WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                        result.forecast.cityName)
+                .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                        result.forecast.cityLatitude)
+                .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+                        result.forecast.cityLongitude)
+                .build());
+        return operations.size() - 1;
+    }
 
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+    private PostSyncDispatcher createPostSyncDispatcher(final String preferredLocation) {
+        return new PostSyncDispatcher(getContext())
+                // The detail widget lists the whole forecast
+                .addConsumer(new PostSyncDispatcher.Consumer() {
+                    @Override
+                    public boolean isAffected(ForecastChangeSet changes, TodaySnapshot today) {
+                        return changes.isDaysRemoved() || changes.hasChanges(preferredLocation);
+                    }
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+                    @Override
+                    public void consume(ForecastChangeSet changes, TodaySnapshot today) {
+                        updateWidgets();
+                    }
+                })
+                // The others only show today
+                .addConsumer(new PostSyncDispatcher.Consumer() {
+                    @Override
+                    public boolean isAffected(ForecastChangeSet changes, TodaySnapshot today) {
+                        return PostSyncDispatcher.isTodayChanged(changes, today);
+                    }
 
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+                    @Override
+                    public void consume(ForecastChangeSet changes, TodaySnapshot today) {
+                        updateMuzei();
+                    }
+                })
+                // The notification shows today's weather once a day, whatever the sync changed
+                .addConsumer(new PostSyncDispatcher.Consumer() {
+                    @Override
+                    public boolean isAffected(ForecastChangeSet changes, TodaySnapshot today) {
+                        return today != null && isNotificationDue();
+                    }
 
-                ContentValues weatherValues = new ContentValues();
+                    @Override
+                    public void consume(ForecastChangeSet changes, TodaySnapshot today) {
+                        notifyWeather(today);
+                    }
+                })
+                .addConsumer(new PostSyncDispatcher.Consumer() {
+                    @Override
+                    public boolean isAffected(ForecastChangeSet changes, TodaySnapshot today) {
+                        return PostSyncDispatcher.isTodayChanged(changes, today);
+                    }
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+                    @Override
+                    public void consume(ForecastChangeSet changes, TodaySnapshot today) {
+                        new WearDataItemSender(getContext()).updateWearData(today);
+                    }
+                });
+    }
 
-                cVVector.add(weatherValues);
+    /**
+     * @return the days stored for the location from today onwards, in date order.
+     */
+    private ForecastBatch loadStoredDays(String locationSetting) {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = getContext().getContentResolver().query(weatherUri,
+                STORED_WEATHER_PROJECTION, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return new ForecastBatch();
+        }
+        try {
+            ForecastBatch stored = new ForecastBatch(cursor.getCount());
+            while (cursor.moveToNext()) {
+                stored.add(cursor.getLong(INDEX_STORED_DATE),
+                        cursor.getInt(INDEX_STORED_WEATHER_ID),
+                        cursor.getString(INDEX_STORED_SHORT_DESC),
+                        cursor.getDouble(INDEX_STORED_MAX_TEMP),
+                        cursor.getDouble(INDEX_STORED_MIN_TEMP),
+                        cursor.getDouble(INDEX_STORED_HUMIDITY),
+                        cursor.getDouble(INDEX_STORED_PRESSURE),
+                        cursor.getDouble(INDEX_STORED_WIND_SPEED),
+                        cursor.getDouble(INDEX_STORED_DEGREES));
             }
+            return stored;
+        } finally {
+            cursor.close();
+        }
+    }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                new WearDataItemSender(getContext()).updateWearData();
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+    /**
+     * @return true if the database still has rows from today onwards for the location, i.e. a
+     * "not modified" answer from the server would leave us with something to show.
+     */
+    private boolean hasCurrentForecast(String locationSetting) {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = getContext().getContentResolver().query(weatherUri,
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID},
+                null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasRows = cursor.moveToFirst();
+        cursor.close();
+        return hasRows;
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    /**
+     * @return the id of the stored location, or -1 if there is none.
+     */
+    private long findLocationId(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting}, null);
+        if (cursor == null) {
+            return -1;
         }
+        long locationId = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        cursor.close();
+        return locationId;
     }
 
     private void updateWidgets() {
@@ -392,7 +761,26 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    private void notifyWeather() {
+    /**
+     * @return true if notifications are on and the last one was shown more than a day ago.
+     */
+    private boolean isNotificationDue() {
+        Context context = getContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean displayNotifications = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        long lastNotification = prefs.getLong(context.getString(R.string.pref_last_notification), 0);
+        return displayNotifications
+                && System.currentTimeMillis() - lastNotification >= DAY_IN_MILLIS;
+    }
+
+    /**
+     * Shows today's weather in a notification, at most once a day.
+     *
+     * @param today today's weather for the preferred location, or null if there is none
+     */
+    private void notifyWeather(TodaySnapshot today) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -407,18 +795,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today != null) {
+                    int weatherId = today.weatherId;
+                    double high = today.high;
+                    double low = today.low;
+                    String desc = today.description;
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -494,62 +875,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
 
 
-    /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
-     */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
-    }
-
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -581,6 +911,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to have the sync adapter try again after a failed sync.  Unlike
+     * {@link #syncImmediately(Context)} the request isn't expedited, so the sync manager holds
+     * it back until the delay the failed sync asked for has passed and the network is available.
+     * @param context The context used to access the account service
+     */
+    static void requestRetry(Context context) {
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(SyncRetryPolicy.EXTRA_RETRY, true);
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -651,6 +994,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
         SharedPreferences.Editor spe = sp.edit();
         spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
-        spe.commit();
+        SettingsSnapshot.commit(spe);
     }
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SyncResult;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.util.Random;
+
+/**
+ * Decides when to try again after a sync failed because of the network or the server.
+ *
+ * Instead of waiting for the next periodic sync, every consecutive failure schedules a retry
+ * twice as far in the future as the last one, give or take a random half so that devices that
+ * failed together don't all come back at the same moment.  The delay is handed to the sync
+ * manager through {@link SyncResult#delayUntil}, which also keeps periodic syncs from hitting
+ * the server in the meantime.  Failures while the device is offline aren't counted, since the
+ * sync manager holds the retry back until the network is available anyway.  Only the retries
+ * add up: a failed periodic or manual sync starts counting again, so once the retries have
+ * given up the next failure schedules them anew.
+ */
+class SyncRetryPolicy {
+    public static final String LOG_TAG = SyncRetryPolicy.class.getSimpleName();
+
+    // Marks a sync requested by this policy
+    static final String EXTRA_RETRY = "com.example.android.sunshine.app.sync.EXTRA_RETRY";
+
+    private static final String PREFS_NAME = "sync_retry";
+    private static final String KEY_FAILURES = "failures";
+
+    static final long BASE_DELAY_SECONDS = 30;
+    static final long MAX_DELAY_SECONDS = SunshineSyncAdapter.SYNC_INTERVAL;
+    // After this many failures in a row we leave it to the periodic sync
+    static final int MAX_RETRIES = 8;
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+    private final Random mRandom = new Random();
+    // Whether the sync is one this policy asked for
+    private final boolean mRetry;
+
+    /**
+     * @param extras the extras of the sync, which mark a retry with {@link #EXTRA_RETRY}
+     */
+    SyncRetryPolicy(Context context, Bundle extras) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mRetry = extras.getBoolean(EXTRA_RETRY, false);
+    }
+
+    /**
+     * Forgets about earlier failures.
+     */
+    void onSuccess() {
+        if (mPrefs.getInt(KEY_FAILURES, 0) != 0) {
+            mPrefs.edit().remove(KEY_FAILURES).commit();
+        }
+    }
+
+    /**
+     * Records a failed sync and schedules the retry.  Must be called from the sync thread,
+     * since it uses commit to write the failure count.
+     *
+     * @param syncResult the result of the failed sync, which gets the retry delay
+     */
+    void onFailure(SyncResult syncResult) {
+        if (!Utility.isNetworkAvailable(mContext)) {
+            Log.d(LOG_TAG, "Offline, retrying once the network is back");
+            SunshineSyncAdapter.requestRetry(mContext);
+            return;
+        }
+
+        int failures = (mRetry ? mPrefs.getInt(KEY_FAILURES, 0) : 0) + 1;
+        mPrefs.edit().putInt(KEY_FAILURES, failures).commit();
+        if (failures > MAX_RETRIES) {
+            Log.d(LOG_TAG, failures + " failures in a row, waiting for the periodic sync");
+            return;
+        }
+
+        long delaySeconds = getBackoffSeconds(failures, mRandom);
+        syncResult.delayUntil = System.currentTimeMillis() / 1000 + delaySeconds;
+        SunshineSyncAdapter.requestRetry(mContext);
+        Log.d(LOG_TAG, "Sync failure " + failures + ", retrying in " + delaySeconds + "s");
+    }
+
+    /**
+     * @param failures the number of consecutive failures, at least 1
+     * @param random the source of the jitter
+     * @return how many seconds to wait before the next attempt: somewhere between half and all
+     * of {@link #BASE_DELAY_SECONDS} doubled for every failure, but never more than
+     * {@link #MAX_DELAY_SECONDS}.
+     */
+    static long getBackoffSeconds(int failures, Random random) {
+        // Cap the shift as well, so a large count can't overflow
+        int doublings = Math.min(Math.max(failures - 1, 0), 30);
+        long delay = Math.min(BASE_DELAY_SECONDS << doublings, MAX_DELAY_SECONDS);
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (delay - half + 1));
+    }
+}